@@ -63,7 +63,8 @@ public class CFEditorSmokeIT {
     @Rule
     public ContentFragmentRule contentFragmentRule = new ContentFragmentRule(cqBaseClassRule.authorRule);
 
-    private static final InstallPackageRule installPackageRule = new InstallPackageRule(cqBaseClassRule.authorRule, "/test-content", PACKAGE_NAME, PACKAGE_VERSION, PACKAGE_GROUP);
+    private static final InstallPackageRule installPackageRule = new InstallPackageRule(cqBaseClassRule.authorRule, "/test-content", PACKAGE_NAME, PACKAGE_VERSION, PACKAGE_GROUP)
+        .withCleanupPaths(TEST_CONTENT_FRAGMENT_FOLDER, TEST_CONTENT_FRAGMENT_CONF_FOLDER);
 
     @ClassRule
     public static final TestRule ruleChain = RuleChain.outerRule(cqBaseClassRule).around(installPackageRule);
@@ -74,6 +75,10 @@ public class CFEditorSmokeIT {
      */
     @AfterClass
     public static void after() {
+        if (installPackageRule.isCached()) {
+            // The package stays installed for the next test classes, the folders are deleted when the JVM exits
+            return;
+        }
         try {
             CleanUpRule.cleanUp(cqBaseClassRule.authorRule, TEST_CONTENT_FRAGMENT_FOLDER, TIMEOUT, RETRY_DELAY);
         } catch (InterruptedException | TimeoutException | RuntimeException ignored) {}
@@ -16,25 +16,15 @@
 
 package com.adobe.cq.cloud.testing.it.cf.smoke.rules;
 
-import com.adobe.cq.testing.client.CQClient;
-import org.apache.sling.testing.clients.util.poller.Polling;
 import org.apache.sling.testing.junit.rules.instance.Instance;
 import org.junit.rules.ExternalResource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 
 public class CleanUpRule extends ExternalResource {
 
-    private static final Logger LOG = LoggerFactory.getLogger(CleanUpRule.class);
-
-    private static final ThreadLocal<List<String>> toDelete = ThreadLocal.withInitial(() -> new ArrayList<>(15));
-    private final Instance rule;
-    private final long timeout;
-    private final long delay;
+    private final CleanupEngine engine;
 
     /**
      * Cleanup all the added paths via #addPath() at the end of the test enclosed statement
@@ -43,9 +33,7 @@ public class CleanUpRule extends ExternalResource {
      * @param delay delay in milliseconds in between retries to delete a path
      */
     public CleanUpRule(Instance rule, long timeout, long delay) {
-        this.rule = rule;
-        this.timeout = timeout;
-        this.delay = delay;
+        this.engine = new CleanupEngine(rule, timeout, delay);
     }
 
     /**
@@ -53,19 +41,16 @@ public class CleanUpRule extends ExternalResource {
      * @param path path to be deleted at the end
      */
     public void addPath(String path) {
-        toDelete.get().add(path);
+        engine.register(path);
     }
 
     @Override
     protected void after() {
-        toDelete.get().forEach((path) -> {
-            try {
-                new Polling(() -> {
-                    rule.getAdminClient().deletePath(path);
-                    return rule.getAdminClient().exists(path);
-                }).poll(timeout, delay);
-            } catch (InterruptedException | TimeoutException | RuntimeException ignored) {}
-        });
+        try {
+            engine.clean();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -77,14 +62,14 @@ public class CleanUpRule extends ExternalResource {
      * @param delay - the delay at which to call the delete path request
      *
      * @throws TimeoutException if the cleanup is not successful before timeout
-     * @throws InterruptedException to mark this method as "waiting"
+     * @throws InterruptedException if interrupted while cleaning up
      */
     public static void cleanUp(Instance rule, String path, long timeout, long delay) throws TimeoutException, InterruptedException {
-        new Polling(() -> {
-            LOG.debug("Specifically cleaning up the path: " + path);
-            rule.getAdminClient(CQClient.class).deletePath(path);
-            return rule.getAdminClient(CQClient.class).exists(path);
-        }).poll(timeout, delay);
+        CleanupEngine engine = new CleanupEngine(rule, timeout, delay);
+        engine.register(path);
+        List<String> remaining = engine.clean();
+        if (!remaining.isEmpty()) {
+            throw new TimeoutException("Could not clean up " + path);
+        }
     }
 }
-
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.cf.smoke.rules;
+
+import org.apache.http.HttpStatus;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.poller.Polling;
+import org.apache.sling.testing.junit.rules.instance.Instance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes registered paths in bulk: nested paths are collapsed into their topmost registered ancestor, the remaining
+ * paths are deleted with one Sling POST per batch of -Dcleanup.batchSize paths (default 50), then their deletion
+ * is verified concurrently, deleting again the ones still present.
+ * <p>
+ * A copy of this class lives in the xf-smoke module, keep both in sync.
+ */
+public final class CleanupEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CleanupEngine.class);
+
+    private static final int BATCH_SIZE = Integer.getInteger("cleanup.batchSize", 50);
+    private static final int MAX_VERIFIERS = 8;
+
+    private final Instance rule;
+    private final long timeout;
+    private final long delay;
+    private final Set<String> paths = new LinkedHashSet<>();
+
+    /**
+     * @param rule the instance the paths are deleted from
+     * @param timeout milliseconds timeout for verifying the deletion of one path
+     * @param delay delay in milliseconds in between retries to delete a path
+     */
+    public CleanupEngine(Instance rule, long timeout, long delay) {
+        this.rule = rule;
+        this.timeout = timeout;
+        this.delay = delay;
+    }
+
+    /**
+     * Registers a path for deletion, registering it again has no effect
+     * @param path path to be deleted
+     */
+    public synchronized void register(String path) {
+        paths.add(path);
+    }
+
+    /**
+     * Deletes the registered paths and clears the registry
+     * @return the paths still present after the timeout
+     * @throws InterruptedException if the caller or a verification was interrupted, the paths may remain
+     */
+    public List<String> clean() throws InterruptedException {
+        List<String> topmost;
+        synchronized (this) {
+            topmost = collapse(paths);
+            paths.clear();
+        }
+        if (topmost.isEmpty()) {
+            return topmost;
+        }
+
+        SlingClient client = rule.getAdminClient();
+        for (int i = 0; i < topmost.size(); i += BATCH_SIZE) {
+            deleteBatch(client, topmost.subList(i, Math.min(i + BATCH_SIZE, topmost.size())));
+        }
+        return verify(client, topmost);
+    }
+
+    /**
+     * Removes the duplicated paths and the paths having an ancestor in the collection
+     * @param paths the paths
+     * @return the topmost paths, in their original order
+     */
+    static List<String> collapse(Collection<String> paths) {
+        Set<String> all = new HashSet<>(paths);
+        Set<String> topmost = new LinkedHashSet<>();
+        for (String path : paths) {
+            if (!hasAncestorIn(all, path)) {
+                topmost.add(path);
+            }
+        }
+        return new ArrayList<>(topmost);
+    }
+
+    private static boolean hasAncestorIn(Set<String> all, String path) {
+        for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            if (all.contains(path.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the paths with a single request, failures being left to the verification
+     */
+    private void deleteBatch(SlingClient client, List<String> batch) {
+        FormEntityBuilder form = FormEntityBuilder.create().addParameter(":operation", "delete");
+        batch.forEach(path -> form.addParameter(":applyTo", path));
+        try {
+            client.doPost("/", form.build(), HttpStatus.SC_OK);
+            LOG.debug("Deleted {} paths", batch.size());
+        } catch (ClientException e) {
+            LOG.warn("Could not delete {} paths at once, the verification deletes the remaining ones one by one",
+                batch.size(), e);
+        }
+    }
+
+    /**
+     * Waits concurrently for the paths to be gone, deleting again the ones still present
+     */
+    private List<String> verify(SlingClient client, List<String> deleted) throws InterruptedException {
+        ConcurrentLinkedQueue<String> remaining = new ConcurrentLinkedQueue<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(deleted.size(), MAX_VERIFIERS));
+        try {
+            CompletableFuture<?>[] verifications = deleted.stream()
+                .map(path -> CompletableFuture.runAsync(() -> {
+                    try {
+                        new Polling(() -> {
+                            if (!client.exists(path)) {
+                                return true;
+                            }
+                            client.deletePath(path);
+                            return !client.exists(path);
+                        }).poll(timeout, delay);
+                    } catch (TimeoutException | RuntimeException e) {
+                        LOG.warn("Could not delete {}", path, e);
+                        remaining.add(path);
+                    } catch (InterruptedException e) {
+                        // Reported to the caller thread once all the verifications are done
+                        interrupted.set(true);
+                        remaining.add(path);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new);
+            // Interruptible, unlike join(), the verifications being interrupted by shutdownNow() then
+            CompletableFuture.allOf(verifications).get();
+        } catch (ExecutionException e) {
+            // The verifications catch their failures
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (interrupted.get()) {
+            throw new InterruptedException("Interrupted while verifying the deletion of " + remaining);
+        }
+        return new ArrayList<>(remaining);
+    }
+}
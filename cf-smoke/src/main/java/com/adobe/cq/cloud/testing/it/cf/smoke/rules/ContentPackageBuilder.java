@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.cq.cloud.testing.it.cf.smoke.rules;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Builds a content package from a resources folder without writing it to disk.
+ * <p>
+ * The package is streamed through a pipe to the reader of {@link #openStream()}, so that memory stays bounded
+ * whatever the size of the resources. A package not larger than -Dinstall.package.imageLimit bytes (default 16 MiB)
+ * is kept in memory once fully streamed, the next streams, e.g. of retried uploads, being read from that image.
+ */
+public final class ContentPackageBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(ContentPackageBuilder.class);
+
+    private static final String PROPERTIES_ENTRY = "META-INF/vault/properties.xml";
+    private static final int IMAGE_LIMIT = Integer.getInteger("install.package.imageLimit", 16 * 1024 * 1024);
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final String resourceFolder;
+    private final String version;
+
+    // Guarded by this
+    private byte[] image;
+
+    /**
+     * @param resourceFolder the resources folder holding the package content
+     * @param version the version written in the package properties, null to keep the one of the resources
+     */
+    public ContentPackageBuilder(String resourceFolder, String version) {
+        this.resourceFolder = resourceFolder;
+        this.version = version;
+    }
+
+    /**
+     * @return the name of the package file
+     */
+    public String getFileName() {
+        return resourceFolder.replaceAll("^.*/", "") + ".zip";
+    }
+
+    /**
+     * Opens a stream of the package, built on the fly unless already kept in memory
+     * @return the stream, to be closed by the caller
+     */
+    public synchronized InputStream openStream() {
+        if (image != null) {
+            return new ByteArrayInputStream(image);
+        }
+
+        PipedInputStream pipe = new PipedInputStream(PIPE_SIZE);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        PipedOutputStream out;
+        try {
+            out = new PipedOutputStream(pipe);
+        } catch (IOException e) {
+            // The pipe is new, so it cannot be already connected
+            throw new IllegalStateException(e);
+        }
+
+        Thread writer = new Thread(() -> {
+            ImageCapture capture = new ImageCapture(out);
+            try {
+                writeTo(capture);
+                capture.close();
+                byte[] complete = capture.toByteArray();
+                if (complete != null) {
+                    keep(complete);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+                IOUtils.closeQuietly(out);
+            }
+        }, "package-builder");
+        writer.setDaemon(true);
+        writer.start();
+
+        return new FilterInputStream(pipe) {
+            @Override
+            public int read() throws IOException {
+                return checked(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checked(super.read(b, off, len));
+            }
+
+            private int checked(int read) throws IOException {
+                if (read < 0 && failure.get() != null) {
+                    throw new IOException("Could not build the package from " + resourceFolder, failure.get());
+                }
+                return read;
+            }
+        };
+    }
+
+    private synchronized void keep(byte[] complete) {
+        image = complete;
+        LOG.info("Package of {} kept in memory, {} bytes", resourceFolder, complete.length);
+    }
+
+    /**
+     * Writes the package
+     * @param out the stream written to, not closed
+     * @throws IOException if the resources could not be read or the stream written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        Manifest man = new Manifest();
+
+        Attributes attributes = man.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Build-Jdk", ManagementFactory.getRuntimeMXBean().getVmVersion());
+
+        try {
+            withResourceFolder(resourceFolder, srcPath -> {
+                LOG.info("Creating package from resources folder {}", srcPath);
+                JarOutputStream outJar = new JarOutputStream(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                }, man);
+                Files.walkFileTree(srcPath, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                        String entryName = srcPath.relativize(path).toString();
+                        JarEntry je = new JarEntry(entryName);
+                        je.setTime(attrs.lastModifiedTime().toMillis());
+                        outJar.putNextEntry(je);
+                        if (PROPERTIES_ENTRY.equals(entryName) && version != null) {
+                            writeProperties(path, outJar);
+                        } else {
+                            try (InputStream in = Files.newInputStream(path)) {
+                                IOUtils.copy(in, outJar);
+                            }
+                        }
+                        outJar.closeEntry();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                outJar.close();
+                return null;
+            });
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Copies the package properties with the version of the builder
+     */
+    private void writeProperties(Path path, OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.loadFromXML(in);
+        }
+        properties.setProperty("version", version);
+        properties.storeToXML(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, properties.getProperty("description"), "UTF-8");
+    }
+
+    /**
+     * Runs the action on the resources folder, which may be in a jar
+     * @param resourceFolder the resources folder
+     * @param action the action, the folder is only readable while it runs
+     * @param <T> the result type
+     * @return the result of the action
+     * @throws IOException if the action failed
+     * @throws URISyntaxException if the folder cannot be located
+     */
+    static <T> T withResourceFolder(String resourceFolder, ResourceFolderAction<T> action) throws IOException, URISyntaxException {
+        URI resourceUri = Objects.requireNonNull(ContentPackageBuilder.class.getResource(resourceFolder)).toURI();
+        Path resourcePath;
+
+        try (FileSystem fs = FileSystems.newFileSystem(resourceUri, Collections.emptyMap())) {
+            if (resourceUri.getScheme().equals("jar")) {
+                resourcePath = fs.getPath(resourceFolder);
+            } else {
+                resourcePath = Paths.get(resourceUri);
+            }
+            return action.apply(resourcePath);
+        }
+    }
+
+    @FunctionalInterface
+    interface ResourceFolderAction<T> {
+        T apply(Path resourcePath) throws IOException;
+    }
+
+    /**
+     * Copies the bytes written to the pipe, until they exceed the image limit
+     */
+    private static final class ImageCapture extends FilterOutputStream {
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private ImageCapture(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            capture(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (copy != null && copy.size() + len > IMAGE_LIMIT) {
+                copy = null;
+            }
+            if (copy != null) {
+                copy.write(b, off, len);
+            }
+        }
+
+        /**
+         * @return the bytes written, null if they exceeded the limit
+         */
+        private byte[] toByteArray() {
+            return (copy != null) ? copy.toByteArray() : null;
+        }
+    }
+}
@@ -16,11 +16,13 @@
 package com.adobe.cq.cloud.testing.it.cf.smoke.rules;
 
 import com.adobe.cq.testing.client.PackageManagerClient;
-import org.apache.commons.io.IOUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.sling.testing.clients.ClientException;
 import org.apache.sling.testing.clients.SlingClient;
 import org.apache.sling.testing.clients.SlingHttpResponse;
 import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.apache.sling.testing.clients.util.JsonUtils;
 import org.apache.sling.testing.clients.util.poller.Polling;
 import org.apache.sling.testing.junit.rules.instance.Instance;
 import org.junit.Assert;
@@ -31,18 +33,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.lang.management.ManagementFactory;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.Integer.MAX_VALUE;
@@ -51,16 +57,35 @@ import static org.apache.http.HttpStatus.SC_OK;
 /**
  * Install the test content package from resources.
  * Takes in an {@code Instance} rule, which has to be applied before this rule
+ * <p>
+ * With -Dinstall.package.cache=true the package version is suffixed with a hash of the resources, the upload and
+ * install are skipped when the instance already has that package installed, and the package stays installed until
+ * the JVM exits, shared by all the test classes installing the same content. There is no teardown in between: when
+ * the JVM exits, the packages uploaded by this JVM are uninstalled and the paths set with
+ * {@link #withCleanupPaths(String...)} deleted. Packages found already installed are left untouched with their
+ * content, for the next runs.
  */
 public class InstallPackageRule implements TestRule {
     private static final Logger LOG = LoggerFactory.getLogger(InstallPackageRule.class);
 
+    private static final boolean CACHE = Boolean.getBoolean("install.package.cache");
+
+    // Content hash per resource folder
+    private static final Map<String, String> HASHES = new ConcurrentHashMap<>();
+    // Packages kept installed, per instance url and package path
+    private static final Map<String, SharedInstall> SHARED = new HashMap<>();
+
+    // Timeout and retry delay for deleting one of the cleanup paths
+    private static final long CLEANUP_TIMEOUT = 3000;
+    private static final long CLEANUP_DELAY = 500;
+
     private final String srcPath;
     private final String name;
     private final String version;
     private final String group;
 
     private final Instance instance;
+    private final List<String> cleanupPaths = new ArrayList<>();
 
     public  InstallPackageRule(Instance instance, String srcPath, String name, String version, String group) {
         this.instance = instance;
@@ -70,8 +95,36 @@ public class InstallPackageRule implements TestRule {
         this.group = group;
     }
 
+    /**
+     * Sets paths to delete after uninstalling the package kept installed for the JVM lifetime, typically content the
+     * test classes create below the package content and cannot delete while the package is shared
+     * @param paths the paths, deleted when the JVM exits
+     * @return this rule
+     */
+    public InstallPackageRule withCleanupPaths(String... paths) {
+        cleanupPaths.addAll(Arrays.asList(paths));
+        return this;
+    }
+
+    /**
+     * @return true if the package is kept installed for the JVM lifetime, content installed by the package must not
+     * be removed by the test classes then
+     */
+    public boolean isCached() {
+        return CACHE;
+    }
+
     @Override
     public Statement apply(Statement statement, Description description) {
+        if (CACHE) {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    acquireShared().install();
+                    statement.evaluate();
+                }
+            };
+        }
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
@@ -83,21 +136,7 @@ public class InstallPackageRule implements TestRule {
                     client = instance.getAdminClient(PackageManagerClient.class);
                     newPackagePath = buildPath(name, version, group);
                     // before
-                    final File packFile = generatePackage(srcPath);
-                    LOG.info("Created package {}", packFile);
-                    String finalNewPackagePath = newPackagePath;
-                    PackageManagerClient finalClient = client;
-                    new Polling(() -> {
-                        try {
-                            uploadedPackage.set(finalClient.uploadPackage(new FileInputStream(packFile), packFile.getName()));
-                            uploadedPackage.get().install();
-                            Assert.assertEquals("Package path does not match expectations",
-                                    finalNewPackagePath, uploadedPackage.get().getPath());
-                        } catch (FileNotFoundException | RuntimeException e) {
-                            cleanupPackage(finalClient, finalNewPackagePath);
-                        }
-                        return finalClient.isPackageCreated(name, version, group);
-                    }).poll(20000, 1000);
+                    uploadedPackage.set(install(client, new ContentPackageBuilder(srcPath, null), newPackagePath, version));
 
                     // statement
                     statement.evaluate();
@@ -114,50 +153,109 @@ public class InstallPackageRule implements TestRule {
         };
     }
 
-    private File generatePackage(String resourceFolder) throws IOException, URISyntaxException {
-        URI resourceUri = Objects.requireNonNull(getClass().getResource(resourceFolder)).toURI();
-        Path resourcePath;
+    /**
+     * Uploads and installs the package, retrying for 20 seconds
+     * @return the uploaded package
+     */
+    private PackageManagerClient.Package install(PackageManagerClient client, ContentPackageBuilder builder,
+                                                 String packagePath, String packageVersion)
+            throws TimeoutException, InterruptedException {
+        AtomicReference<PackageManagerClient.Package> uploadedPackage = new AtomicReference<>(null);
+        new Polling(() -> {
+            try (InputStream packageStream = builder.openStream()) {
+                uploadedPackage.set(client.uploadPackage(packageStream, builder.getFileName()));
+                uploadedPackage.get().install();
+                Assert.assertEquals("Package path does not match expectations",
+                        packagePath, uploadedPackage.get().getPath());
+            } catch (IOException | RuntimeException e) {
+                cleanupPackage(client, packagePath);
+            }
+            return client.isPackageCreated(name, packageVersion, group);
+        }).poll(20000, 1000);
+        return uploadedPackage.get();
+    }
 
-        try (FileSystem fs = FileSystems.newFileSystem(resourceUri, Collections.emptyMap())) {
-            if (resourceUri.getScheme().equals("jar")) {
-                resourcePath = fs.getPath(resourceFolder);
-            } else {
-                resourcePath = Paths.get(resourceUri);
+    private static void removePackage(PackageManagerClient.Package uploadedPackage, String packagePath) {
+        try {
+            uploadedPackage.unInstall();
+            uploadedPackage.delete();
+        } catch (Exception e) {
+            LOG.warn("Could not remove package {}", packagePath, e);
+        }
+    }
+
+    private SharedInstall acquireShared() throws IOException, URISyntaxException {
+        String hash = HASHES.get(srcPath);
+        if (hash == null) {
+            hash = ContentPackageBuilder.withResourceFolder(srcPath, InstallPackageRule::contentHash);
+            HASHES.put(srcPath, hash);
+        }
+        String sharedVersion = (version == null || "".equals(version)) ? hash : version + "-" + hash;
+        PackageManagerClient client = instance.getAdminClient(PackageManagerClient.class);
+        String packagePath = buildPath(name, sharedVersion, group);
+        synchronized (SHARED) {
+            if (SHARED.isEmpty()) {
+                Runtime.getRuntime().addShutdownHook(new Thread(InstallPackageRule::uninstallShared,
+                    "install-package-cleanup"));
             }
+            SharedInstall shared = SHARED.computeIfAbsent(client.getUrl() + packagePath,
+                key -> new SharedInstall(client, packagePath, sharedVersion));
+            shared.cleanupPaths.addAll(cleanupPaths);
+            return shared;
+        }
+    }
 
-            LOG.info("Creating package from resources folder {}", resourcePath);
-            return buildJarFromFolder(resourcePath);
+    /**
+     * Uninstalls the shared packages uploaded by this JVM and deletes their cleanup paths
+     */
+    private static void uninstallShared() {
+        synchronized (SHARED) {
+            SHARED.values().stream()
+                .filter(shared -> shared.uploadedPackage != null)
+                .forEach(SharedInstall::uninstall);
         }
     }
 
-    private File buildJarFromFolder(Path srcPath) throws IOException {
-        File generatedPackage = File.createTempFile("temp-package-", ".zip");
-        generatedPackage.deleteOnExit();
-
-        Manifest man = new Manifest();
-
-        Attributes attributes = man.getMainAttributes();
-        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
-        attributes.putValue("Build-Jdk", ManagementFactory.getRuntimeMXBean().getVmVersion());
-
-        try (
-                JarOutputStream outJar = new JarOutputStream(Files.newOutputStream(generatedPackage.toPath()), man);
-                Stream<Path> walk = Files.walk(srcPath, MAX_VALUE)
-        ) {
-            for (Iterator<Path> it = walk.iterator(); it.hasNext(); ) {
-                Path path = it.next();
-                if (Files.isDirectory(path)) continue;
-                String entryName = path.toString().substring(srcPath.toString().length() + 1);
-                JarEntry je = new JarEntry(entryName);
-                je.setTime(Files.getLastModifiedTime(path).toMillis());
-                je.setSize(Files.size(path));
-                outJar.putNextEntry(je);
-                IOUtils.copy(Files.newInputStream(path), outJar);
-                outJar.closeEntry();
+    /**
+     * @return true if the package is installed on the instance, according to the package manager list
+     */
+    private static boolean isInstalled(SlingClient client, String packagePath) throws ClientException {
+        SlingHttpResponse response = client.doGet("/crx/packmgr/list.jsp",
+            Collections.singletonList(new BasicNameValuePair("path", packagePath)), SC_OK);
+        JsonNode results = JsonUtils.getJsonNodeFromString(response.getContent()).path("results");
+        for (JsonNode result : results) {
+            if (packagePath.equals(result.path("path").asText()) && !result.path("lastUnpacked").isMissingNode()
+                && !result.path("lastUnpacked").isNull()) {
+                return true;
             }
         }
+        return false;
+    }
 
-        return generatedPackage;
+    /**
+     * Hash of the paths and contents of the files in the folder
+     */
+    private static String contentHash(Path folder) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(folder, MAX_VALUE)) {
+            files = walk.filter(path -> !Files.isDirectory(path)).sorted().collect(Collectors.toList());
+        }
+        for (Path path : files) {
+            digest.update(folder.relativize(path).toString().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(path));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.substring(0, 12);
     }
 
     // TODO move to aem-testing-clients
@@ -185,4 +283,59 @@ public class InstallPackageRule implements TestRule {
         }
         return String.format("/etc/packages/%s/%s-%s.zip", group, name, version);
     }
-}
\ No newline at end of file
+
+    /**
+     * Package kept installed on an instance for the JVM lifetime, uninstalled when the JVM exits
+     */
+    private final class SharedInstall {
+        private final PackageManagerClient client;
+        private final String packagePath;
+        private final String packageVersion;
+
+        // Guarded by SHARED
+        private final Set<String> cleanupPaths = new LinkedHashSet<>();
+        // Guarded by this
+        private boolean installed;
+        private volatile PackageManagerClient.Package uploadedPackage;
+
+        private SharedInstall(PackageManagerClient client, String packagePath, String packageVersion) {
+            this.client = client;
+            this.packagePath = packagePath;
+            this.packageVersion = packageVersion;
+        }
+
+        private synchronized void install() throws Exception {
+            if (installed) {
+                return;
+            }
+            if (isInstalled(client, packagePath)) {
+                LOG.info("Package {} already installed, skipping the upload", packagePath);
+            } else {
+                uploadedPackage = InstallPackageRule.this.install(client,
+                    new ContentPackageBuilder(srcPath, packageVersion), packagePath, packageVersion);
+            }
+            installed = true;
+        }
+
+        private void uninstall() {
+            LOG.info("Uninstalling shared package {}", packagePath);
+            removePackage(uploadedPackage, packagePath);
+            if (cleanupPaths.isEmpty()) {
+                return;
+            }
+            CleanupEngine engine = new CleanupEngine(instance, CLEANUP_TIMEOUT, CLEANUP_DELAY);
+            cleanupPaths.forEach(engine::register);
+            try {
+                List<String> remaining = engine.clean();
+                if (!remaining.isEmpty()) {
+                    LOG.warn("Could not delete {} after uninstalling package {}", remaining, packagePath);
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while deleting {} after uninstalling package {}", cleanupPaths, packagePath);
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.warn("Could not delete {} after uninstalling package {}", cleanupPaths, packagePath, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.AgentsStreamReader;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Package;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Queue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.adobe.cq.cloud.testing.it.smoke.benchmark.ReplicationPayloads.AGENT;
+
+/**
+ * Parsing of the distribution agents json by the tree deserializers and the streaming reader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentsParsingBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int packages;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private byte[] agentsJson;
+    private byte[] queuesJson;
+    private JsonNode agentNode;
+    private JsonNode queueNode;
+    private JsonNode packageNode;
+    private String lastPath;
+    private String lastPkgId;
+    private Agent previousQueues;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        agentsJson = ReplicationPayloads.agentsJson(packages).getBytes(StandardCharsets.UTF_8);
+        queuesJson = ReplicationPayloads.queuesJson(packages, AGENT).getBytes(StandardCharsets.UTF_8);
+        JsonNode agents = mapper.readTree(agentsJson);
+        agentNode = agents.path(AGENT);
+        queueNode = agentNode.path("queues").path(ReplicationPayloads.queueName(AGENT));
+        packageNode = queueNode.path("package-0@0");
+        lastPath = ReplicationPayloads.path(packages - 1);
+        lastPkgId = ReplicationPayloads.pkgId(packages - 1);
+        previousQueues = AgentsStreamReader.readQueues(new ByteArrayInputStream(queuesJson), AGENT);
+    }
+
+    @Benchmark
+    public Agents agentsDeserializer() throws IOException {
+        return JsonCodec.readerFor(Agents.class).readValue(agentsJson);
+    }
+
+    @Benchmark
+    public Agent agentFromJson() {
+        return Agent.fromJson(agentNode);
+    }
+
+    @Benchmark
+    public Queue queueFromJson() {
+        return Queue.fromJson(queueNode);
+    }
+
+    @Benchmark
+    public Package packageFromJson() {
+        return Package.fromJson(packageNode);
+    }
+
+    @Benchmark
+    public Agents streamReadAgent() throws IOException {
+        return AgentsStreamReader.readAgents(new ByteArrayInputStream(agentsJson), AGENT);
+    }
+
+    @Benchmark
+    public Agent streamReadQueues() throws IOException {
+        return AgentsStreamReader.readQueues(new ByteArrayInputStream(queuesJson), AGENT);
+    }
+
+    @Benchmark
+    public Agent streamReadUnchangedQueues() throws IOException {
+        return AgentsStreamReader.readQueues(new ByteArrayInputStream(queuesJson), AGENT, previousQueues);
+    }
+
+    @Benchmark
+    public Optional<Package> streamFindLastPackage() throws IOException {
+        return AgentsStreamReader.findPackageInQueues(new ByteArrayInputStream(queuesJson), AGENT, lastPath, lastPkgId);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.adobe.cq.cloud.testing.it.smoke.benchmark.ReplicationPayloads.AGENT;
+import static com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient.checkPackageInQueue;
+
+/**
+ * Queue checks done on every replication poll.
+ * The warnings logged when the package is found are disabled so that only the lookup is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=error")
+public class QueueCheckBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int packages;
+
+    private Agent agent;
+    private String lastPath;
+    private String lastPkgId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        agent = new ObjectMapper().readValue(ReplicationPayloads.agentsJson(packages), Agents.class).getAgent(AGENT);
+        lastPath = ReplicationPayloads.path(packages - 1);
+        lastPkgId = ReplicationPayloads.pkgId(packages - 1);
+    }
+
+    @Benchmark
+    public boolean checkPackageInQueueHit() {
+        return checkPackageInQueue(agent, lastPath, lastPkgId);
+    }
+
+    @Benchmark
+    public boolean checkPackageInQueueMiss() {
+        return checkPackageInQueue(agent, "/content/test/missing", "");
+    }
+}
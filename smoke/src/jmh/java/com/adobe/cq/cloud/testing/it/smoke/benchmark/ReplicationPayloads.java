@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+
+/**
+ * Synthetic distribution payloads shaped like the ones returned by AEM
+ */
+final class ReplicationPayloads {
+
+    static final String AGENT = "publish";
+
+    private ReplicationPayloads() {
+    }
+
+    static String queueName(String agent) {
+        return "queue-" + agent + "Subscriber";
+    }
+
+    static String path(int i) {
+        return "/content/test/page-" + i;
+    }
+
+    static String pkgId(int i) {
+        return "dstrpck-" + i;
+    }
+
+    /**
+     * Agents list with the preview and publish agents, each holding the given number of packages
+     */
+    static String agentsJson(int packages) {
+        StringBuilder json = new StringBuilder(
+            "{\"sling:resourceType\":\"sling/distribution/service/agent/list\",\"items\":[\"preview\",\"publish\"]");
+        for (String agent : new String[] {"preview", AGENT}) {
+            json.append(",\"").append(agent).append("\":").append(agentJson(packages, agent));
+        }
+        return json.append('}').toString();
+    }
+
+    static String agentJson(int packages, String agent) {
+        return "{\"name\":\"" + agent + "\",\"queues\":" + queuesJson(packages, agent)
+            + ",\"log\":{},\"status\":{\"state\":\"RUNNING\"}}";
+    }
+
+    static String queuesJson(int packages, String agent) {
+        String queue = queueName(agent);
+        StringBuilder json = new StringBuilder("{\"sling:resourceType\":\"sling/distribution/service/agent/queue/list\",");
+        json.append("\"items\":[\"").append(queue).append("\"],\"").append(queue).append("\":")
+            .append(queueJson(packages));
+        return json.append('}').toString();
+    }
+
+    static String queueJson(int packages) {
+        StringBuilder json = new StringBuilder("{\"state\":\"RUNNING\",\"items\":[\"package-0@0\"],\"itemsCount\":")
+            .append(packages).append(",\"empty\":").append(packages == 0);
+        for (int i = 0; i < packages; i++) {
+            json.append(",\"package-0@").append(i).append("\":").append(packageJson(i));
+        }
+        return json.append('}').toString();
+    }
+
+    static String packageJson(int i) {
+        return "{\"size\":6443,\"paths\":[\"" + path(i) + "\"],\"action\":\"ADD\",\"id\":\"package-0@" + i
+            + "\",\"pkgId\":\"" + pkgId(i) + "\",\"time\":\"Fri Feb 25 16:18:11 UTC 2022\",\"state\":\"QUEUED\","
+            + "\"userid\":\"replication-service\",\"attempts\":0}";
+    }
+
+    static String replicationResponseJson() {
+        return "{\"path\":[\"/content/test/page-0\"],\"artifactId\":[\"" + pkgId(0) + "\"],"
+            + "\"status.message\":\"Replication started for /content/test/page-0\",\"status.code\":200}";
+    }
+
+    /**
+     * Wraps the json in a response as returned by the sling client, the content being read once per instance
+     */
+    static SlingHttpResponse slingResponse(String json) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        CloseableHttpResponse closeable = (CloseableHttpResponse) Proxy.newProxyInstance(
+            ReplicationPayloads.class.getClassLoader(), new Class<?>[] {CloseableHttpResponse.class},
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName())) {
+                    return null;
+                }
+                try {
+                    return method.invoke(response, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        return new SlingHttpResponse(closeable);
+    }
+}
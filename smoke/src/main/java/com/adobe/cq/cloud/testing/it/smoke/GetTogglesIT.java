@@ -19,7 +19,7 @@ import com.adobe.cq.testing.client.CQClient;
 import com.adobe.cq.testing.junit.rules.CQAuthorPublishClassRule;
 import com.adobe.cq.testing.junit.rules.CQRule;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
 import org.apache.sling.testing.clients.ClientException;
 import org.apache.sling.testing.clients.SlingHttpResponse;
 import org.junit.*;
@@ -33,6 +33,7 @@ import org.xml.sax.SAXException;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Arrays;
+import java.util.Collections;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -61,15 +62,13 @@ public class GetTogglesIT {
      */
     @Test
     public void testTogglesEndpointReturnsStaticEnabledFlagInJsonResponseOnAuthor() throws ClientException {
-        ObjectMapper mapper = new ObjectMapper();
-        SlingHttpResponse response = adminAuthor.doGet("etc.clientlibs/toggles.json", 200);
-        String responseContent = response.getContent();
-        try {
-            ToggleResponse tr = mapper.readValue(responseContent, ToggleResponse.class);
+        try (SlingHttpResponse response = adminAuthor.doStreamGet("etc.clientlibs/toggles.json",
+            Collections.emptyList(), Collections.emptyList(), 200)) {
+            ToggleResponse tr = JsonCodec.read(response.getEntity(), ToggleResponse.class);
             Assert.assertTrue(Arrays.asList(tr.getEnabled()).contains("ENABLED"));
 
         } catch (IOException e) {
-            Assert.fail("Couldn't read response from ClientLibs toggle endpoint. \nError: " + e.getMessage() + "\nContents: " + responseContent);
+            Assert.fail("Couldn't read response from ClientLibs toggle endpoint. \nError: " + e.getMessage());
         }
     }
 
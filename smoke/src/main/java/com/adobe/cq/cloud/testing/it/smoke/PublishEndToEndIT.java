@@ -44,6 +44,9 @@ public class PublishEndToEndIT {
     private static final Logger LOG = LoggerFactory.getLogger(PublishEndToEndIT.class);
 
     protected static final long TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    // Replicate to publish then preview instead of both agents concurrently
+    private static final boolean SEQUENTIAL = Boolean.getBoolean("smoke.publish.sequential");
     
     @ClassRule
     public static final CQAuthorPublishClassRule cqBaseClassRule = new CQAuthorPublishClassRule();
@@ -93,17 +96,23 @@ public class PublishEndToEndIT {
     }
 
     /**
-     * Execute activate and deactivate on publish & preview
+     * Execute activate and deactivate on publish & preview, concurrently on both agents
+     * unless -Dsmoke.publish.sequential=true
      *
      * @return true if success
      * @throws SmokeTestException if exception occurs
      */
     private boolean activateAndDeactivate() throws SmokeTestException {
-        contentPublishRule.activateAssertPublish();
-        contentPublishRule.deactivateAssertPublish();
-        
-        contentPublishRule.activateAssertPreview();
-        contentPublishRule.deactivateAssertPreview();
+        if (SEQUENTIAL) {
+            contentPublishRule.activateAssertPublish();
+            contentPublishRule.deactivateAssertPublish();
+
+            contentPublishRule.activateAssertPreview();
+            contentPublishRule.deactivateAssertPreview();
+            return true;
+        }
+        contentPublishRule.activateAssertPublishAndPreview();
+        contentPublishRule.deactivateAssertPublishAndPreview();
         return true;
     }
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import com.adobe.cq.cloud.testing.it.smoke.polling.AsyncPolling;
+import com.adobe.cq.cloud.testing.it.smoke.polling.LatencyHistogram;
+import com.adobe.cq.cloud.testing.it.smoke.rules.ContentPublishRule;
+import com.adobe.cq.cloud.testing.it.smoke.rules.ServiceAccessibleRule;
+import com.adobe.cq.testing.client.CQClient;
+import com.adobe.cq.testing.junit.rules.CQAuthorPublishClassRule;
+import com.adobe.cq.testing.junit.rules.CQRule;
+import com.adobe.cq.testing.junit.rules.Page;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Replication throughput load test, skipped unless -Dsmoke.load.pages is set.
+ * <p>
+ * For each offered rate of -Dsmoke.load.rates (pages/s), pages are created under the test page and activated
+ * through the publish agent with at most -Dsmoke.load.concurrency activations in flight. The latency until the page
+ * is visible on publish is measured from the intended start of each activation, so a saturated author does not hide
+ * its own delays. A step stops when the queue depth or the error rate crosses its threshold, and the report gives
+ * the rate at which the sustained throughput stops rising.
+ */
+public class PublishLoadIT {
+    private static final Logger LOG = LoggerFactory.getLogger(PublishLoadIT.class);
+
+    // Pages activated per rate step
+    private static final int PAGES = Integer.getInteger("smoke.load.pages", 0);
+    private static final int CONCURRENCY = Integer.getInteger("smoke.load.concurrency", 10);
+    private static final String RATES = System.getProperty("smoke.load.rates", "0.5,1,2,4");
+    private static final int MAX_QUEUE_DEPTH = Integer.getInteger("smoke.load.maxQueueDepth", 200);
+    private static final double MAX_ERROR_RATE =
+        Double.parseDouble(System.getProperty("smoke.load.maxErrorRate", "0.05"));
+
+    // Min number of completed activations before the error rate is checked
+    private static final int MIN_SAMPLES = 10;
+    // Relative throughput gain under which a step is considered not rising anymore
+    private static final double MIN_GAIN = 0.05;
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(CONCURRENCY + 1,
+        AsyncPolling.daemonThreadFactory("smoke-load-"));
+    private static final ExecutorService IO_EXECUTOR = Executors.newFixedThreadPool(CONCURRENCY,
+        AsyncPolling.daemonThreadFactory("smoke-load-io-"));
+
+    @ClassRule
+    public static final CQAuthorPublishClassRule cqBaseClassRule = new CQAuthorPublishClassRule();
+
+    @Rule
+    public CQRule cqBaseRule = new CQRule(cqBaseClassRule.authorRule, cqBaseClassRule.publishRule);
+
+    private static final Page root = new Page(cqBaseClassRule.authorRule);
+
+    @Rule
+    public RuleChain ruleChain = RuleChain.outerRule(new ServiceAccessibleRule(cqBaseClassRule.authorRule))
+        .around(new ServiceAccessibleRule(cqBaseClassRule.publishRule))
+        .around(root);
+
+    @Rule
+    public ContentPublishRule contentPublishRule =
+        new ContentPublishRule(root, cqBaseClassRule.authorRule, cqBaseClassRule.publishRule).withExecutor(EXECUTOR)
+            .withIoExecutor(IO_EXECUTOR);
+
+    @BeforeClass
+    public static void beforeClass() {
+        assumeTrue("Load test disabled, set -Dsmoke.load.pages to enable it", PAGES > 0);
+    }
+
+    /**
+     * Activates pages at increasing rates and reports the sustained throughput per rate.
+     *
+     * @throws Exception if the pages cannot be created
+     */
+    @Test
+    public void testPublishThroughput() throws Exception {
+        CQClient author = cqBaseClassRule.authorRule.getAdminClient(CQClient.class);
+        JsonNode content = author.doGetJson(root.getPath() + "/jcr:content", 0);
+
+        List<StepResult> steps = new ArrayList<>();
+        for (String rate : RATES.split(",")) {
+            List<String> paths = createPages(author, content, steps.size());
+            StepResult step = runStep(Double.parseDouble(rate.trim()), paths);
+            steps.add(step);
+            LOG.info("Load step done - {}", step);
+            if (step.stopReason.get() != null) {
+                break;
+            }
+        }
+        report(steps);
+
+        assertTrue("No page published at the lowest rate", steps.get(0).successes.get() > 0);
+    }
+
+    private List<String> createPages(CQClient author, JsonNode content, int step) throws ClientException {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            String name = String.format("load-%d-%d", step, i);
+            author.doPost(root.getPath() + "/" + name, FormEntityBuilder.create()
+                .addParameter("jcr:primaryType", "cq:Page")
+                .addParameter("jcr:content/jcr:primaryType", "cq:PageContent")
+                .addParameter("jcr:content/jcr:title", name)
+                .addParameter("jcr:content/sling:resourceType", content.path("sling:resourceType").asText())
+                .addParameter("jcr:content/cq:template", content.path("cq:template").asText())
+                .build(), SC_CREATED);
+            paths.add(root.getPath() + "/" + name);
+        }
+        return paths;
+    }
+
+    private StepResult runStep(double rate, List<String> paths) throws InterruptedException {
+        StepResult result = new StepResult(rate);
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        List<String> published = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<?>> activations = new ArrayList<>();
+
+        ScheduledFuture<?> depthCheck = EXECUTOR.scheduleWithFixedDelay(() -> {
+            try {
+                int depth = contentPublishRule.getPublishQueueDepth();
+                result.maxQueueDepth.accumulateAndGet(depth, Math::max);
+                if (depth > MAX_QUEUE_DEPTH) {
+                    result.stopReason.compareAndSet(null, "queue depth " + depth);
+                }
+            } catch (SmokeTestException e) {
+                LOG.warn("Could not get the publish queue depth", e);
+            }
+        }, 0, 5, TimeUnit.SECONDS);
+
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < paths.size() && result.stopReason.get() == null; i++) {
+                // The latency is measured from the intended start, waiting for a free slot is part of it
+                long intended = start + i * interval;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                inFlight.acquire();
+
+                String path = paths.get(i);
+                long actual = System.nanoTime();
+                activations.add(contentPublishRule.activateAsync(path).whenComplete((publishResult, t) -> {
+                    inFlight.release();
+                    long end = System.nanoTime();
+                    result.lastCompletion.accumulateAndGet(end, Math::max);
+                    if (t == null) {
+                        published.add(path);
+                        result.latency.record(TimeUnit.NANOSECONDS.toMillis(end - intended));
+                        result.serviceTime.record(TimeUnit.NANOSECONDS.toMillis(end - actual));
+                        result.successes.incrementAndGet();
+                    } else {
+                        LOG.warn("Activation of {} failed", path, t);
+                        result.errors.incrementAndGet();
+                    }
+                    int completed = result.successes.get() + result.errors.get();
+                    if (completed >= MIN_SAMPLES && (double) result.errors.get() / completed > MAX_ERROR_RATE) {
+                        result.stopReason.compareAndSet(null, String.format("error rate %d/%d", result.errors.get(),
+                            completed));
+                    }
+                }));
+            }
+            CompletableFuture.allOf(activations.toArray(new CompletableFuture[0])).handle((ignored, t) -> null).join();
+        } finally {
+            depthCheck.cancel(false);
+            result.elapsedNanos = result.lastCompletion.get() - start;
+            deactivate(published);
+        }
+        return result;
+    }
+
+    private void deactivate(List<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        try {
+            contentPublishRule.deactivateAll(new ArrayList<>(paths));
+        } catch (SmokeTestException e) {
+            LOG.warn("Could not deactivate the {} load test pages", paths.size(), e);
+        }
+    }
+
+    /**
+     * Logs the throughput per step and the first step after which the throughput stops rising
+     */
+    private void report(List<StepResult> steps) {
+        StepResult knee = null;
+        for (int i = 1; i < steps.size() && knee == null; i++) {
+            if (steps.get(i).getThroughput() < steps.get(i - 1).getThroughput() * (1 + MIN_GAIN)) {
+                knee = steps.get(i - 1);
+            }
+        }
+        StepResult last = steps.get(steps.size() - 1);
+        if (knee == null && last.stopReason.get() != null) {
+            knee = (steps.size() > 1) ? steps.get(steps.size() - 2) : last;
+        }
+
+        LOG.info("Publish load test results on agent {}:", contentPublishRule.getPublishDistAgent());
+        for (StepResult step : steps) {
+            LOG.info("  {}", step);
+        }
+        if (knee != null) {
+            LOG.info("Throughput stops rising at an offered rate of {} pages/s, sustained {} pages/s",
+                knee.rate, String.format("%.2f", knee.getThroughput()));
+        } else {
+            LOG.info("Throughput still rising at an offered rate of {} pages/s, add higher rates to find the limit",
+                last.rate);
+        }
+    }
+
+    private static final class StepResult {
+        private final double rate;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final AtomicInteger successes = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+        private final AtomicLong lastCompletion = new AtomicLong();
+        private final AtomicReference<String> stopReason = new AtomicReference<>();
+        private long elapsedNanos;
+
+        private StepResult(double rate) {
+            this.rate = rate;
+        }
+
+        private double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : successes.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("offered %s pages/s, sustained %.2f pages/s, %d published, %d errors, "
+                    + "max queue depth %d, latency ms [%s], service time ms [%s]%s", rate, getThroughput(),
+                successes.get(), errors.get(), maxQueueDepth.get(), latency, serviceTime,
+                stopReason.get() != null ? ", stopped on " + stopReason.get() : "");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.adobe.cq.cloud.testing.it.smoke;
 
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -15,9 +16,8 @@ import org.junit.Test;
 
 import com.adobe.cq.testing.client.CQClient;
 import com.adobe.cq.testing.junit.rules.CQAuthorClassRule;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import static org.junit.Assert.fail;
 
@@ -51,12 +51,13 @@ public class ValidateAntiSamyConfigurationIT {
                         fail("Test failure: unable to read embedded JSON file.");
                     }
                     HttpEntity httpEntity = new InputStreamEntity(inputStream, ContentType.APPLICATION_JSON);
-                    SlingHttpResponse response = adminAuthor.doPost(TEST_REQUEST_PATH, httpEntity, 200);
-                    JsonElement jsonElement = JsonParser.parseString(response.getContent().trim());
-                    JsonObject result = jsonElement.getAsJsonObject();
-                    if (!"ok".equalsIgnoreCase(result.get("status").getAsString())) {
-                        fail(String.format("Invalid AntiSamy configuration detected. The following URLs were not validated as expected:\n%s",
-                                response.getContent()));
+                    try (SlingHttpResponse response = adminAuthor.doStreamPost(TEST_REQUEST_PATH, httpEntity,
+                        Collections.emptyList(), 200)) {
+                        JsonNode result = JsonCodec.readTree(response.getEntity());
+                        if (!"ok".equalsIgnoreCase(result.path("status").asText())) {
+                            fail(String.format("Invalid AntiSamy configuration detected. The following URLs were not validated as expected:\n%s",
+                                    JsonCodec.toJson(result)));
+                        }
                     }
                     return true;
                 }
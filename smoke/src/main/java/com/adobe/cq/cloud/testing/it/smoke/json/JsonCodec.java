@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpEntity;
+
+/**
+ * JVM wide json codec of the smoke tests.
+ * <p>
+ * The mapper is configured once and only used through immutable, thread-safe {@link ObjectReader} and
+ * {@link ObjectWriter} instances, cached per type. Responses are read from the entity byte stream without
+ * being buffered as a string first.
+ */
+public final class JsonCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ObjectReader TREE_READER = MAPPER.reader();
+    private static final ObjectWriter WRITER = MAPPER.writer();
+    private static final ObjectWriter PRETTY_WRITER = MAPPER.writerWithDefaultPrettyPrinter();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * @param type the type to read
+     * @return the shared reader of the type
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    /**
+     * Reads the entity content, closing its stream
+     *
+     * @param entity the response entity
+     * @param type the type to read
+     * @param <T> the type to read
+     * @return the decoded value
+     * @throws IOException if the content cannot be read or decoded
+     */
+    public static <T> T read(HttpEntity entity, Class<T> type) throws IOException {
+        try (InputStream in = entity.getContent()) {
+            return readerFor(type).readValue(in);
+        }
+    }
+
+    /**
+     * @param json the json
+     * @param type the type to read
+     * @param <T> the type to read
+     * @return the decoded value
+     * @throws IOException if the json cannot be decoded
+     */
+    public static <T> T read(String json, Class<T> type) throws IOException {
+        return readerFor(type).readValue(json);
+    }
+
+    /**
+     * Reads the entity content as a json tree, closing its stream
+     *
+     * @param entity the response entity
+     * @return the json tree
+     * @throws IOException if the content cannot be read or decoded
+     */
+    public static JsonNode readTree(HttpEntity entity) throws IOException {
+        try (InputStream in = entity.getContent()) {
+            return TREE_READER.readTree(in);
+        }
+    }
+
+    /**
+     * @param json the json
+     * @return the json tree
+     * @throws IOException if the json cannot be decoded
+     */
+    public static JsonNode readTree(String json) throws IOException {
+        return TREE_READER.readTree(json);
+    }
+
+    /**
+     * @return a new empty json object
+     */
+    public static ObjectNode createObjectNode() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * @param value the value to serialize
+     * @return the json of the value, empty if it cannot be serialized
+     */
+    public static String toJson(Object value) {
+        try {
+            return WRITER.writeValueAsString(value);
+        } catch (JsonProcessingException ignored) {
+            return "";
+        }
+    }
+
+    /**
+     * Writes the value as indented json
+     *
+     * @param file the file to write
+     * @param value the value to serialize
+     * @throws IOException if the file cannot be written
+     */
+    public static void writePretty(File file, Object value) throws IOException {
+        PRETTY_WRITER.writeValue(file, value);
+    }
+}
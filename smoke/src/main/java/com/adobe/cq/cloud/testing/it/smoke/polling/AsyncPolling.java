@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.polling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non blocking counterpart of {@link org.apache.sling.testing.clients.util.poller.Polling}.
+ * <p>
+ * Each attempt is scheduled on a {@link ScheduledExecutorService}, so no thread is held while waiting between
+ * attempts and many polls can be in flight on a small pool. Blocking attempts, such as HTTP requests, are handed
+ * over to an I/O executor, so that they never delay the scheduled tasks of the other polls.
+ */
+public final class AsyncPolling {
+
+    // Size of the shared scheduler, configurable with -Dsmoke.async.threads
+    private static final int THREADS = Integer.getInteger("smoke.async.threads", 4);
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(THREADS,
+        daemonThreadFactory("smoke-async-"));
+
+    static {
+        // Cancelled timeouts must not stay queued until their delay expires
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    // Size of the shared pool running the blocking calls, configurable with -Dsmoke.io.threads
+    private static final int IO_THREADS = Integer.getInteger("smoke.io.threads", 16);
+
+    private static final ExecutorService IO = Executors.newFixedThreadPool(IO_THREADS,
+        daemonThreadFactory("smoke-io-"));
+
+    private final Callable<Boolean> c;
+    private final ScheduledExecutorService scheduler;
+    private final Executor io;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    private volatile Exception lastException;
+    private long deadline;
+    private long delay;
+    private boolean backoff;
+    private BackoffDelays delays;
+
+    /**
+     * Polls with the attempts run on the scheduler threads, for callables that do not block
+     *
+     * @param c the callable to poll
+     * @param scheduler the scheduler of the attempts
+     */
+    public AsyncPolling(Callable<Boolean> c, ScheduledExecutorService scheduler) {
+        this(c, scheduler, scheduler);
+    }
+
+    /**
+     * Polls with the attempts scheduled on the scheduler and run on the I/O executor
+     *
+     * @param c the callable to poll
+     * @param scheduler the scheduler of the attempts
+     * @param io the executor running the attempts
+     */
+    public AsyncPolling(Callable<Boolean> c, ScheduledExecutorService scheduler, Executor io) {
+        this.c = c;
+        this.scheduler = scheduler;
+        this.io = io;
+    }
+
+    /**
+     * The scheduler shared by all the asynchronous polls of the JVM
+     *
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService getDefaultScheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * The bounded pool shared by the blocking calls of the asynchronous polls and replications of the JVM
+     *
+     * @return the shared I/O executor
+     */
+    public static ExecutorService getDefaultIoExecutor() {
+        return IO;
+    }
+
+    /**
+     * Creates a thread factory for daemon threads, so pools never keep the test JVM alive
+     *
+     * @param prefix prefix of the thread names
+     * @return the thread factory
+     */
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Backs off between the attempts like {@link BackoffPolling}: fast probes first, then exponentially growing
+     * delays up to the delay passed to {@link #poll(long, long)}, with a last attempt at the deadline
+     *
+     * @return this polling
+     */
+    public AsyncPolling withBackoff() {
+        this.backoff = true;
+        return this;
+    }
+
+    /**
+     * Starts polling the callable until it returns true or the timeout expires.
+     * The returned future completes exceptionally with a {@link TimeoutException} having the last exception
+     * thrown by the callable as cause.
+     *
+     * @param timeout max time in milliseconds to poll
+     * @param delay time in milliseconds between attempts, the max one when backing off
+     * @return the future completed when the callable returned true
+     */
+    public CompletableFuture<Void> poll(long timeout, long delay) {
+        this.deadline = System.currentTimeMillis() + timeout;
+        this.delay = delay;
+        this.delays = backoff ? BackoffDelays.withDefaults(delay) : null;
+        io.execute(this::attempt);
+        return result;
+    }
+
+    public Exception getLastException() {
+        return lastException;
+    }
+
+    private void attempt() {
+        if (result.isDone()) {
+            // cancelled by the caller
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(c.call())) {
+                result.complete(null);
+                return;
+            }
+        } catch (Exception e) {
+            lastException = e;
+        } catch (Throwable t) {
+            // Errors such as failed assertions are not retried
+            result.completeExceptionally(t);
+            return;
+        }
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            TimeoutException timeout =
+                new TimeoutException(String.format("Call failed to return true in time. Last exception was: %s", lastException));
+            timeout.initCause(lastException);
+            result.completeExceptionally(timeout);
+        } else {
+            long next = (delays != null) ? delays.next() : delay;
+            scheduler.schedule(() -> io.execute(this::attempt), Math.max(0, Math.min(next, remaining)),
+                TimeUnit.MILLISECONDS);
+        }
+    }
+}
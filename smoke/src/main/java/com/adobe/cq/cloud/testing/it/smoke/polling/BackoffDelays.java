@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.polling;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between the attempts of a poll, shared by {@link BackoffPolling} and {@link AsyncPolling}.
+ * <p>
+ * A few fast probes are done first, then the delay grows exponentially with jitter up to the max delay.
+ * Callers shorten the last delay so that a final attempt is done at the deadline.
+ */
+public final class BackoffDelays {
+
+    public static final int DEFAULT_FAST_PROBES = 3;
+    public static final long DEFAULT_FAST_PROBE_DELAY = 100;
+    public static final double DEFAULT_MULTIPLIER = 2;
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private final int fastProbes;
+    private final long fastProbeDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final long maxDelay;
+
+    private int attempts;
+    private long backoff;
+
+    /**
+     * @param fastProbes number of attempts of the fast probe phase
+     * @param fastProbeDelay delay in milliseconds between the fast probes, also the initial backoff delay
+     * @param multiplier factor applied to the delay after each attempt of the backoff phase
+     * @param jitter random variation of each delay, as a fraction of the delay between 0 and 1
+     * @param maxDelay max delay in milliseconds between two attempts
+     */
+    public BackoffDelays(int fastProbes, long fastProbeDelay, double multiplier, double jitter, long maxDelay) {
+        this.fastProbes = fastProbes;
+        this.fastProbeDelay = fastProbeDelay;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.maxDelay = maxDelay;
+        this.backoff = Math.min(fastProbeDelay, maxDelay);
+    }
+
+    /**
+     * @param maxDelay max delay in milliseconds between two attempts
+     * @return the default delays, the ones of {@link BackoffPolling}
+     */
+    public static BackoffDelays withDefaults(long maxDelay) {
+        return new BackoffDelays(DEFAULT_FAST_PROBES, DEFAULT_FAST_PROBE_DELAY, DEFAULT_MULTIPLIER, DEFAULT_JITTER,
+            maxDelay);
+    }
+
+    /**
+     * @return the delay in milliseconds to wait after the attempt just done
+     */
+    public long next() {
+        attempts++;
+        if (attempts < fastProbes) {
+            return Math.min(fastProbeDelay, maxDelay);
+        }
+        long sleep = withJitter(backoff);
+        backoff = Math.min(maxDelay, (long) (backoff * multiplier));
+        return sleep;
+    }
+
+    private long withJitter(long sleep) {
+        if (jitter <= 0) {
+            return sleep;
+        }
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return (long) (sleep * factor);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.polling;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.testing.clients.util.poller.Polling;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drop-in replacement of {@link Polling} with adaptive delays between attempts.
+ * <p>
+ * A few fast probes are done first, then the delay grows exponentially with jitter up to the delay passed to
+ * {@link #poll(long, long)}, which becomes the max delay. The last sleep is shortened so that a final attempt is
+ * always done at the deadline. Attempts and latencies are recorded per call site, see {@link #getStats()}.
+ */
+public class BackoffPolling extends Polling {
+    private static final Logger log = LoggerFactory.getLogger(BackoffPolling.class);
+
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private int fastProbes = BackoffDelays.DEFAULT_FAST_PROBES;
+    private long fastProbeDelay = BackoffDelays.DEFAULT_FAST_PROBE_DELAY;
+    private double multiplier = BackoffDelays.DEFAULT_MULTIPLIER;
+    private double jitter = BackoffDelays.DEFAULT_JITTER;
+
+    private long attempts;
+    private long waited;
+    private Exception lastException;
+
+    /**
+     * @param name the call site, used to group the recorded statistics
+     * @param c the callable to poll
+     */
+    public BackoffPolling(String name, Callable<Boolean> c) {
+        super(c);
+        this.name = name;
+    }
+
+    /**
+     * Sets the fast probe phase done before backing off
+     *
+     * @param count number of attempts of the fast probe phase
+     * @param delay delay in milliseconds between the fast probes, also the initial backoff delay
+     * @return this polling
+     */
+    public BackoffPolling withFastProbes(int count, long delay) {
+        this.fastProbes = count;
+        this.fastProbeDelay = delay;
+        return this;
+    }
+
+    /**
+     * @param multiplier factor applied to the delay after each attempt of the backoff phase
+     * @return this polling
+     */
+    public BackoffPolling withMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param jitter random variation of each delay, as a fraction of the delay between 0 and 1
+     * @return this polling
+     */
+    public BackoffPolling withJitter(double jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Polls until the callable returns true or the timeout expires
+     *
+     * @param timeout max time in milliseconds to poll
+     * @param delay max delay in milliseconds between two attempts
+     * @throws TimeoutException if the callable did not return true in time
+     * @throws InterruptedException if interrupted while sleeping
+     */
+    @Override
+    public void poll(long timeout, long delay) throws TimeoutException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeout;
+        BackoffDelays delays = new BackoffDelays(fastProbes, fastProbeDelay, multiplier, jitter, delay);
+        attempts = 0;
+        lastException = null;
+
+        try {
+            while (true) {
+                attempts++;
+                try {
+                    if (Boolean.TRUE.equals(call())) {
+                        record(start, true);
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    lastException = e;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    record(start, false);
+                    throw new TimeoutException(String.format(
+                        "Call failed to return true in %d ms. Last exception was: %s", timeout, lastException));
+                }
+
+                long sleep = delays.next();
+                // Shorten the last sleep to always attempt once at the deadline
+                Thread.sleep(Math.max(0, Math.min(sleep, remaining)));
+            }
+        } finally {
+            waited = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * @return time in milliseconds spent in the last poll
+     */
+    public long getWaited() {
+        return waited;
+    }
+
+    @Override
+    public Exception getLastException() {
+        return lastException;
+    }
+
+    /**
+     * @return number of attempts of the last poll
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the statistics of this call site
+     */
+    public Stats getStats() {
+        return getStats(name);
+    }
+
+    /**
+     * @param name the call site
+     * @return the statistics recorded for the call site
+     */
+    public static Stats getStats(String name) {
+        return STATS.computeIfAbsent(name, Stats::new);
+    }
+
+    /**
+     * @return the statistics of all call sites
+     */
+    public static Map<String, Stats> getAllStats() {
+        return Collections.unmodifiableMap(STATS);
+    }
+
+    private void record(long start, boolean success) {
+        Stats stats = getStats();
+        stats.attempts.record(attempts);
+        stats.latency.record(System.currentTimeMillis() - start);
+        if (!success) {
+            stats.timeouts.incrementAndGet();
+        }
+        log.debug("Polling {} {} after {} attempts - {}", name, success ? "succeeded" : "timed out", attempts, stats);
+    }
+
+    /**
+     * Attempts and latency histograms of the polls of a call site
+     */
+    public static final class Stats {
+        private final String name;
+        private final LatencyHistogram attempts = new LatencyHistogram();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return histogram of the number of attempts per poll
+         */
+        public LatencyHistogram getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return histogram of the time in milliseconds spent per poll
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: attempts [%s], latency ms [%s], timeouts %d", name, attempts, latency,
+                getTimeouts());
+        }
+    }
+}
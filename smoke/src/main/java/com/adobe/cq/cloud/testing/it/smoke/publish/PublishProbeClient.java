@@ -0,0 +1,237 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.publish;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationMetrics;
+import com.adobe.cq.testing.client.CQClient;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.apache.sling.testing.clients.SlingHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client checking pages on publish over pooled keep-alive connections, so that polls reuse the connection and
+ * TLS session through the CDN instead of opening a new one each time.
+ * <p>
+ * Every response is released before being returned: small bodies are drained to keep the connection reusable,
+ * bodies larger than -Dsmoke.publish.drainLimit (default 64 KiB) or of unknown length abort the connection instead.
+ * New and reused connections and the connect duration, including the TLS handshake, are recorded in the
+ * {@link ReplicationMetrics}.
+ */
+public class PublishProbeClient implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PublishProbeClient.class);
+
+    private static final long DRAIN_LIMIT = Long.getLong("smoke.publish.drainLimit", 64 * 1024L);
+
+    // Kept below the usual idle timeouts of the CDN and the load balancers
+    private static final long KEEP_ALIVE_MS = 30000;
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+    private static final int MAX_CONNECTIONS = 10;
+
+    // publish url -> JVM wide client
+    private static final Map<URI, PublishProbeClient> CLIENTS = new HashMap<>();
+
+    private final MeteredConnectionManager connectionManager;
+    private final CQClient client;
+
+    /**
+     * @param url the publish url
+     * @param user the publish user
+     * @param password the password of the user
+     * @throws ClientException if the client cannot be created
+     */
+    public PublishProbeClient(URI url, String user, String password) throws ClientException {
+        this(url, user, password, null);
+    }
+
+    /**
+     * @param instanceClient the client of the publish instance, whose url, credentials and cookies are used
+     * @throws ClientException if the client cannot be created
+     */
+    public PublishProbeClient(SlingClient instanceClient) throws ClientException {
+        this(instanceClient.getUrl(), instanceClient.getUser(), instanceClient.getPassword(), instanceClient);
+    }
+
+    private PublishProbeClient(URI url, String user, String password, SlingClient instanceClient)
+        throws ClientException {
+        this.connectionManager = new MeteredConnectionManager(ReplicationMetrics.getInstance());
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        SlingClient.Builder builder = SlingClient.Builder.create(url, user, password);
+        if (instanceClient != null) {
+            builder.setCredentialsProvider(instanceClient.getCredentialsProvider());
+            builder.setCookieStore(instanceClient.getCookieStore());
+        }
+        builder.httpClientBuilder()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy())
+            .evictExpiredConnections()
+            .evictIdleConnections(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        this.client = builder.build().adaptTo(CQClient.class);
+    }
+
+    /**
+     * Gets the JVM wide probe client of a publish instance, so that the pooled connections outlive the tests.
+     * The clients are closed when the JVM exits.
+     *
+     * @param instanceClient the client of the publish instance, the probe client is created from its configuration
+     * @return the probe client of the instance url
+     * @throws ClientException if the client cannot be created
+     */
+    public static synchronized PublishProbeClient get(SlingClient instanceClient) throws ClientException {
+        PublishProbeClient probeClient = CLIENTS.get(instanceClient.getUrl());
+        if (probeClient == null) {
+            if (CLIENTS.isEmpty()) {
+                Runtime.getRuntime().addShutdownHook(new Thread(PublishProbeClient::closeAll, "publish-probe-close"));
+            }
+            probeClient = new PublishProbeClient(instanceClient);
+            CLIENTS.put(instanceClient.getUrl(), probeClient);
+        }
+        return probeClient;
+    }
+
+    private static synchronized void closeAll() {
+        CLIENTS.values().forEach(PublishProbeClient::close);
+        CLIENTS.clear();
+    }
+
+    /**
+     * @return the client sharing the pooled connections, for requests not going through {@link #probe}
+     */
+    public CQClient getClient() {
+        return client;
+    }
+
+    /**
+     * Executes the request and releases the connection, the body is never returned
+     *
+     * @param request the request
+     * @return the closed response, giving access to the status and the headers
+     * @throws ClientException if the request failed
+     */
+    public SlingHttpResponse probe(HttpRequestBase request) throws ClientException {
+        SlingHttpResponse response = client.doStreamRequest(request, null);
+        try {
+            release(request, response.getEntity());
+        } finally {
+            try {
+                response.close();
+            } catch (IOException e) {
+                log.debug("Could not close the response of {}", request.getURI(), e);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Drains a body small enough to keep the connection, otherwise aborts the request
+     */
+    private static void release(HttpRequestBase request, HttpEntity entity) {
+        if (entity == null) {
+            return;
+        }
+        long length = entity.getContentLength();
+        if (length >= 0 && length <= DRAIN_LIMIT) {
+            try {
+                EntityUtils.consume(entity);
+                return;
+            } catch (IOException e) {
+                log.debug("Could not drain the response of {}", request.getURI(), e);
+            }
+        }
+        request.abort();
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return (keepAlive > 0) ? Math.min(keepAlive, KEEP_ALIVE_MS) : KEEP_ALIVE_MS;
+        };
+    }
+
+    /**
+     * Closes the pooled connections
+     */
+    @Override
+    public void close() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Pool recording whether the leased connections were already open, and the duration of opening new ones
+     */
+    private static final class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+        private final ReplicationMetrics metrics;
+
+        private MeteredConnectionManager(ReplicationMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    HttpClientConnection connection = request.get(timeout, timeUnit);
+                    if (connection.isOpen()) {
+                        metrics.recordConnection(true, 0);
+                    }
+                    return connection;
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout,
+                            HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            super.connect(connection, route, connectTimeout, context);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            metrics.recordConnection(false, millis);
+            log.debug("New connection to {} opened in {} ms", route.getTargetHost(), millis);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication;
+
+/**
+ * Thrown by the {@link QueueWatcher} when a package cannot leave the agent queue before the timeout:
+ * blocked past the allowed attempts, or behind a queue draining too slowly. The message holds the diagnostic.
+ */
+public class QueueStalledException extends Exception {
+
+    public QueueStalledException(String message) {
+        super(message);
+    }
+}
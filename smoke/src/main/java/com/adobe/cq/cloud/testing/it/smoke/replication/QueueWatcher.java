@@ -0,0 +1,373 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import com.adobe.cq.cloud.testing.it.smoke.polling.AsyncPolling;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Package;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Queue;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.QueueDelta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient.checkPackageInQueue;
+
+/**
+ * JVM wide watcher of a distribution agent queue.
+ * <p>
+ * Whatever the number of concurrent waits on an agent, a single poll loop fetches the agent queues and every
+ * snapshot is checked for all the registered waiters. The loop stops when nobody is waiting or subscribed, so the
+ * load on the author stays constant regardless of the number of waits in flight.
+ * <p>
+ * Each snapshot reuses the queues of the previous one whose fingerprint did not change. The waiters are only
+ * checked again when a queue changed, and the subscribers receive the {@link QueueDelta} of the changed queues.
+ * While a single package is awaited and nobody is subscribed, the queues are only read up to that package instead,
+ * the packages that left ahead of it standing for the drained ones.
+ * <p>
+ * The position and attempts of each awaited package and the drain rate of its queue are tracked across snapshots.
+ * Unless disabled with -Dsmoke.queue.failFast=false, a wait fails early with a {@link QueueStalledException}
+ * when its package, or the package blocking its queue, is in error after -Dsmoke.queue.maxAttempts attempts,
+ * or when the estimated time to drain the packages ahead exceeds the remaining time.
+ */
+public final class QueueWatcher {
+    private static final Logger log = LoggerFactory.getLogger(QueueWatcher.class);
+
+    // Delay between two snapshots of the agent queues, configurable with -Dsmoke.queue.watcher.interval
+    private static final long POLL_INTERVAL = Long.getLong("smoke.queue.watcher.interval", 2000);
+
+    private static final boolean FAIL_FAST =
+        Boolean.parseBoolean(System.getProperty("smoke.queue.failFast", "true"));
+
+    // Attempts after which a package in error is not expected to recover
+    private static final int MAX_ATTEMPTS = Integer.getInteger("smoke.queue.maxAttempts", 3);
+
+    // Observation needed before trusting the drain rate
+    private static final long MIN_OBSERVATION = Long.getLong("smoke.queue.minObservation", 30000);
+
+    private static final ConcurrentMap<String, QueueWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    private final String agent;
+    private final ScheduledExecutorService scheduler;
+    private final Executor io;
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Consumer<QueueDelta>> subscribers = new ConcurrentLinkedQueue<>();
+
+    private volatile ReplicationClient client;
+    private volatile Agent lastSnapshot;
+    // True if the last snapshot only holds the queues up to the awaited package, it is not reused then
+    private volatile boolean lastSnapshotPartial;
+    private volatile Exception lastException;
+
+    // Queue name -> packages that left the queue since the watcher started, only updated by the poll loop
+    private final ConcurrentMap<String, Long> drainedCounts = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private boolean polling;
+
+    private QueueWatcher(ReplicationClient client, String agent, ScheduledExecutorService scheduler, Executor io) {
+        this.client = client;
+        this.agent = agent;
+        this.scheduler = scheduler;
+        this.io = io;
+    }
+
+    /**
+     * Returns the watcher of the agent on the author the client is connected to
+     *
+     * @param client the client used to fetch the agent queues
+     * @param agent the agent to watch
+     * @return the JVM wide watcher
+     */
+    public static QueueWatcher get(ReplicationClient client, String agent) {
+        QueueWatcher watcher = WATCHERS.computeIfAbsent(client.getUrl() + "#" + agent,
+            key -> new QueueWatcher(client, agent, AsyncPolling.getDefaultScheduler(),
+                AsyncPolling.getDefaultIoExecutor()));
+        watcher.client = client;
+        return watcher;
+    }
+
+    /**
+     * Waits for the package with the given path and id to leave the agent queues.
+     * The returned future completes with the first snapshot not containing the package, or exceptionally
+     * with a {@link TimeoutException} once the timeout expires, or a {@link QueueStalledException} once the
+     * package is not expected to leave the queue in time. Cancelling it unregisters the waiter.
+     *
+     * @param path path being replicated
+     * @param pkgId identifier for the replication request
+     * @param timeout max time in milliseconds to wait
+     * @return the future of the agent snapshot
+     */
+    public CompletableFuture<Agent> awaitDrained(String path, String pkgId, long timeout) {
+        Waiter waiter = new Waiter(path, pkgId, System.currentTimeMillis() + timeout);
+        waiters.add(waiter);
+        ScheduledFuture<?> timeoutTask = scheduler.schedule(() -> waiter.future.completeExceptionally(
+            new TimeoutException(String.format("Item %s [pkgId: %s] still in queue %s after %s ms", path, pkgId,
+                agent, timeout))),
+            timeout, TimeUnit.MILLISECONDS);
+        waiter.future.whenComplete((snapshot, t) -> timeoutTask.cancel(false));
+        startPolling();
+        return waiter.future;
+    }
+
+    /**
+     * Subscribes to the changes of the agent queues, the consumer is called from the poll loop for every queue
+     * that changed between two snapshots. The loop keeps polling until the subscription is closed.
+     *
+     * @param consumer the consumer of the deltas
+     * @return the subscription, to close to unsubscribe
+     */
+    public AutoCloseable subscribe(Consumer<QueueDelta> consumer) {
+        subscribers.add(consumer);
+        startPolling();
+        return () -> subscribers.remove(consumer);
+    }
+
+    /**
+     * @return the last agent snapshot taken, null if none yet. It only holds the queues up to the awaited package
+     * when a single package was awaited.
+     */
+    public Agent getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    /**
+     * @return the exception thrown by the last failed snapshot, null if none
+     */
+    public Exception getLastException() {
+        return lastException;
+    }
+
+    private synchronized void startPolling() {
+        if (!polling) {
+            polling = true;
+            log.debug("Start watching queues of agent {}", agent);
+            io.execute(this::poll);
+        }
+    }
+
+    private synchronized boolean stopPollingIfIdle() {
+        waiters.removeIf(waiter -> waiter.future.isDone());
+        if (waiters.isEmpty() && subscribers.isEmpty()) {
+            polling = false;
+            log.debug("Stop watching queues of agent {}", agent);
+            return true;
+        }
+        return false;
+    }
+
+    private void poll() {
+        try {
+            Waiter single = (subscribers.isEmpty() && waiters.size() == 1) ? waiters.peek() : null;
+            if (single != null) {
+                // No delta to compute, stop reading once the answer is known
+                Agent snapshot = client.getAgentUntilPackage(agent, single.path, single.pkgId);
+                lastSnapshot = snapshot;
+                lastSnapshotPartial = true;
+                lastException = null;
+                notifyWaiters(snapshot, true, true);
+            } else if (!waiters.isEmpty() || !subscribers.isEmpty()) {
+                Agent previous = lastSnapshotPartial ? null : lastSnapshot;
+                Agent snapshot = client.getAgent(agent, previous);
+                lastSnapshot = snapshot;
+                lastSnapshotPartial = false;
+                lastException = null;
+                List<QueueDelta> deltas = diff(previous, snapshot);
+                deltas.forEach(delta -> drainedCounts.merge(delta.getQueue(), (long) delta.getRemoved().size(),
+                    Long::sum));
+                notifyWaiters(snapshot, previous == null || !deltas.isEmpty(), false);
+                notifySubscribers(deltas);
+            }
+        } catch (Exception e) {
+            // Keep waiting, the next snapshot may succeed
+            lastException = e;
+            log.debug("Exception getting the queues of agent {}", agent, e);
+        } finally {
+            if (!stopPollingIfIdle()) {
+                scheduler.schedule(() -> io.execute(this::poll), POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Only the queues not reused from the previous snapshot are compared
+     */
+    private List<QueueDelta> diff(Agent previous, Agent snapshot) {
+        List<QueueDelta> deltas = new ArrayList<>();
+        Map<String, Queue> before = (previous != null) ? previous.getQueues() : Collections.emptyMap();
+        snapshot.getQueues().forEach((name, queue) -> {
+            if (before.get(name) != queue) {
+                addIfNotEmpty(deltas, QueueDelta.between(agent, name, before.get(name), queue));
+            }
+        });
+        before.forEach((name, queue) -> {
+            if (!snapshot.getQueues().containsKey(name)) {
+                addIfNotEmpty(deltas, QueueDelta.between(agent, name, queue, null));
+            }
+        });
+        return deltas;
+    }
+
+    private static void addIfNotEmpty(List<QueueDelta> deltas, QueueDelta delta) {
+        if (!delta.isEmpty()) {
+            deltas.add(delta);
+        }
+    }
+
+    private void notifyWaiters(Agent snapshot, boolean changed, boolean partial) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+            Waiter waiter = it.next();
+            // A waiter already checked against identical queues is still waiting
+            if (changed || !waiter.checked) {
+                waiter.checked = true;
+                if (waiter.future.isDone() || !checkPackageInQueue(snapshot, waiter.path, waiter.pkgId)) {
+                    waiter.future.complete(snapshot);
+                    it.remove();
+                    continue;
+                }
+                waiter.update(snapshot, now, partial);
+            }
+            String stalled = FAIL_FAST ? waiter.getStalledDiagnostic(now) : null;
+            if (stalled != null) {
+                log.warn(stalled);
+                waiter.future.completeExceptionally(new QueueStalledException(stalled));
+                it.remove();
+            }
+        }
+    }
+
+    private void notifySubscribers(List<QueueDelta> deltas) {
+        for (QueueDelta delta : deltas) {
+            log.debug("Queue changed {}", delta);
+            for (Consumer<QueueDelta> subscriber : subscribers) {
+                try {
+                    subscriber.accept(delta);
+                } catch (RuntimeException e) {
+                    log.warn("Queue delta subscriber failed on {}", delta, e);
+                }
+            }
+        }
+    }
+
+    private long getDrained(String queueName) {
+        return drainedCounts.getOrDefault(queueName, 0L);
+    }
+
+    private final class Waiter {
+        private final String path;
+        private final String pkgId;
+        private final long deadline;
+        private final CompletableFuture<Agent> future = new CompletableFuture<>();
+
+        // Only accessed from the poll loop
+        private boolean checked;
+        private long firstSeen;
+        private long drainedAtFirstSeen;
+        private String queueName;
+        private Package pkg;
+        private int position;
+        private Package blocking;
+
+        private Waiter(String path, String pkgId, long deadline) {
+            this.path = path;
+            this.pkgId = pkgId;
+            this.deadline = deadline;
+        }
+
+        private void update(Agent snapshot, long now, boolean partial) {
+            String previousQueue = queueName;
+            int previousPosition = (pkg != null) ? position : -1;
+            pkg = null;
+            blocking = null;
+            // Keyed by the map key, the queues read from the agent json having no name set
+            for (Map.Entry<String, Queue> entry : snapshot.getQueues().entrySet()) {
+                Queue queue = entry.getValue();
+                Optional<Package> found = queue.findPackage(path, pkgId);
+                if (found.isPresent()) {
+                    if (!entry.getKey().equals(queueName)) {
+                        // The drain rate is only comparable with the position in the same queue
+                        queueName = entry.getKey();
+                        firstSeen = now;
+                        drainedAtFirstSeen = getDrained(queueName);
+                    }
+                    pkg = found.get();
+                    position = queue.getPosition(pkg);
+                    if (partial && queueName.equals(previousQueue) && previousPosition > position) {
+                        // The partial queue has no delta, the packages that left ahead of this one are the drained
+                        drainedCounts.merge(queueName, (long) (previousPosition - position), Long::sum);
+                    }
+                    blocking = queue.getBlockedPackages().stream()
+                        .max(Comparator.comparingInt(Package::getAttempts)).orElse(null);
+                    log.debug("Item {} [pkgId: {}] at position {} in queue {} of {}, attempts {}", path, pkgId,
+                        position, queueName, agent, pkg.getAttempts());
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the reason the package is not expected to leave the queue in time, null if it may
+         */
+        private String getStalledDiagnostic(long now) {
+            if (pkg == null) {
+                return null;
+            }
+            if (blocking != null && blocking.getAttempts() >= MAX_ATTEMPTS) {
+                return String.format("Item %s [pkgId: %s] at position %s in queue %s of %s blocked by item "
+                        + "[id: %s, pkgId: %s] with paths %s in error after %s attempts: %s", path, pkgId, position,
+                    queueName, agent,
+                    blocking.getId(), blocking.getPkgId(), blocking.getPaths(), blocking.getAttempts(),
+                    blocking.getErrorMessage());
+            }
+            long observed = now - firstSeen;
+            long remaining = deadline - now;
+            if (position == 0 || observed < MIN_OBSERVATION) {
+                return null;
+            }
+            double rate = (double) (getDrained(queueName) - drainedAtFirstSeen) / observed;
+            if (rate <= 0) {
+                // Nothing drained yet, no estimate
+                return null;
+            }
+            long eta = (long) (position / rate);
+            if (eta > remaining) {
+                return String.format("Item %s [pkgId: %s] at position %s in queue %s of %s not expected to be "
+                        + "replicated in time: queue draining at %.2f items/s, ETA %s ms exceeds the remaining %s ms",
+                    path, pkgId, position, queueName, agent, rate * 1000, eta, remaining);
+            }
+            return null;
+        }
+    }
+}
@@ -19,24 +19,32 @@ package com.adobe.cq.cloud.testing.it.smoke.replication;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 import com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException;
 import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
+import com.adobe.cq.cloud.testing.it.smoke.polling.AsyncPolling;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.AgentsStreamReader;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Package;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Queue;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.ReplicationResponse;
 import com.adobe.cq.cloud.testing.it.smoke.rules.ContentPublishRule;
 import com.adobe.cq.testing.client.CQClient;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -45,13 +53,14 @@ import org.apache.sling.testing.clients.SlingClientConfig;
 import org.apache.sling.testing.clients.SlingHttpResponse;
 import org.apache.sling.testing.clients.util.FormEntityBuilder;
 import org.apache.sling.testing.clients.util.HttpUtils;
+import org.apache.sling.testing.clients.util.poller.Polling;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.ACTIVATION_REQUEST_FAILED;
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.DEACTIVATION_REQUEST_FAILED;
+import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.QUEUE_BLOCKED;
 import static com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException.GENERIC;
-import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 /**
  * Extension of CQClient to add replication methods
@@ -64,6 +73,18 @@ public class ReplicationClient extends CQClient {
     // uses "NOSONAR" because CQRules:CQBP-71 is triggering, but can be ignored for this test case
     protected static final String DIST_AGENTS_PATH = "/libs/sling/distribution/services/agents"; //NOSONAR
 
+    // Maximum number of paths sent with a single replication request
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    // Maximum number of blocked queues deleted concurrently
+    public static final int DEFAULT_CLEAR_PARALLELISM = 4;
+
+    // Time for the cleared queues to be reported as no longer blocked
+    private static final long CLEAR_VERIFY_TIMEOUT = 10000;
+
+    // Depth of the agent queues resource rendering the queues along with their packages
+    private static final int AGENT_QUEUES_DEPTH = 1;
+
     @SuppressWarnings("unused")
     public ReplicationClient(CloseableHttpClient http, SlingClientConfig config) throws ClientException {
         super(http, config);
@@ -116,9 +137,92 @@ public class ReplicationClient extends CQClient {
         }
     }
 
+    /**
+     * Activates the given paths on author, sending up to {@link #DEFAULT_BATCH_SIZE} paths per request
+     *
+     * @param agent the agent to activate on
+     * @param paths the paths to activate
+     * @return the replication response per path
+     * @throws SmokeTestException exception containing details
+     */
+    public Map<String, ReplicationResponse> activateAll(String agent, Collection<String> paths) throws SmokeTestException {
+        return activateAll(agent, paths, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Activates the given paths on author, sending up to batchSize paths per request
+     *
+     * @param agent the agent to activate on
+     * @param paths the paths to activate
+     * @param batchSize the maximum number of paths per request
+     * @return the replication response per path
+     * @throws SmokeTestException exception containing details
+     */
+    public Map<String, ReplicationResponse> activateAll(String agent, Collection<String> paths, int batchSize)
+        throws SmokeTestException {
+        return replicateAll("Activate", ACTIVATION_REQUEST_FAILED, agent, paths, batchSize);
+    }
+
+    /**
+     * Deactivates the given paths on author, sending up to {@link #DEFAULT_BATCH_SIZE} paths per request
+     *
+     * @param agent the agent to deactivate on
+     * @param paths the paths to deactivate
+     * @return the replication response per path
+     * @throws SmokeTestException exception containing details
+     */
+    public Map<String, ReplicationResponse> deactivateAll(String agent, Collection<String> paths) throws SmokeTestException {
+        return deactivateAll(agent, paths, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Deactivates the given paths on author, sending up to batchSize paths per request
+     *
+     * @param agent the agent to deactivate on
+     * @param paths the paths to deactivate
+     * @param batchSize the maximum number of paths per request
+     * @return the replication response per path
+     * @throws SmokeTestException exception containing details
+     */
+    public Map<String, ReplicationResponse> deactivateAll(String agent, Collection<String> paths, int batchSize)
+        throws SmokeTestException {
+        return replicateAll("Deactivate", DEACTIVATION_REQUEST_FAILED, agent, paths, batchSize);
+    }
+
+    private Map<String, ReplicationResponse> replicateAll(String cmd, String errorCode, String agent,
+        Collection<String> paths, int batchSize) throws SmokeTestException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
+        Map<String, ReplicationResponse> responses = new LinkedHashMap<>();
+        List<String> allPaths = new ArrayList<>(paths);
+        try {
+            for (int from = 0; from < allPaths.size(); from += batchSize) {
+                List<String> batch = allPaths.subList(from, Math.min(from + batchSize, allPaths.size()));
+                log.info("{} {} paths on {}", cmd, batch.size(), agent);
+                ReplicationResponse response = ReplicationResponse.from(activateInternal(cmd, agent, batch));
+                if (response.getCode() != HttpStatus.SC_OK) {
+                    throw getReplicationException(errorCode, response.getMessage(), null);
+                }
+                log.info("{} response received {}", cmd, response);
+                responses.putAll(response.perPath(batch));
+            }
+            return responses;
+        } catch (ClientException | RuntimeException e) {
+            throw getGenericException("Exception during " + cmd.toLowerCase() + " of " + allPaths.size() + " paths", e);
+        }
+    }
+
     private SlingHttpResponse activateInternal(String cmd, String agent, String nodePath) throws ClientException {
+        return activateInternal(cmd, agent, Collections.singletonList(nodePath));
+    }
+
+    private SlingHttpResponse activateInternal(String cmd, String agent, Collection<String> nodePaths) throws ClientException {
         FormEntityBuilder formEntityBuilder =
-            FormEntityBuilder.create().addParameter("cmd", cmd).addParameter("_charset_", "utf-8").addParameter("path", nodePath).addParameter("sync", String.valueOf(true));
+            FormEntityBuilder.create().addParameter("cmd", cmd).addParameter("_charset_", "utf-8").addParameter("sync", String.valueOf(true));
+        for (String nodePath : nodePaths) {
+            formEntityBuilder.addParameter("path", nodePath);
+        }
         if (StringUtils.isNotBlank(agent)) {
             formEntityBuilder.addParameter("agentId", agent);
         }
@@ -135,29 +239,20 @@ public class ReplicationClient extends CQClient {
      * @return true if package still in queue
      */
     public static boolean checkPackageInQueue(Agent agent, String replicatedPath, String id) {
-        // Filter non empty queues
-        List<Queue> nonEmptyQueues = agent.getQueues().values().stream().filter(queue -> !queue.isEmpty()).collect(Collectors.toList());
-        
-        // Filter package details containing path or pkgId
-        return nonEmptyQueues.stream().anyMatch(queue -> queue.getPackageMap().values().stream().anyMatch(pkg -> {
-            boolean isIdSame = true;
-            if (isNotEmpty(id) && isNotEmpty(pkg.getPkgId())) {
-                isIdSame = pkg.getPkgId().equals(id);
+        // Hash lookup on the path index of the non empty queues
+        Optional<Package> pkg = agent.findPackage(replicatedPath, id);
+        if (pkg.isPresent()) {
+            log.warn("The replication queue {} contains item [id: {}, pkgId: {}] with paths {}",
+                agent.getName(), pkg.get().getId(), pkg.get().getPkgId(), pkg.get().getPaths());
+        } else {
+            for (Package blocked : agent.getBlockedPackages()) {
+                log.warn(
+                    "The replication queue {} blocked with item [id: {}, pkgId: {}] having paths {} "
+                        + "with " + "error {}", agent.getName(), blocked.getId(), blocked.getPkgId(),
+                    blocked.getPaths(), blocked.getErrorMessage());
             }
-            boolean containsPkg = pkg.getPaths().contains(replicatedPath) && isIdSame;
-            if (containsPkg) {
-                log.warn("The replication queue {} contains item [id: {}, pkgId: {}] with paths {}",
-                    agent.getName(), pkg.getId(), pkg.getPkgId(), pkg.getPaths());
-            } else {
-                if (pkg.isBlocked()) {
-                    log.warn(
-                        "The replication queue {} blocked with item [id: {}, pkgId: {}] having paths {} "
-                            + "with " + "error {}", agent.getName(), pkg.getId(), pkg.getPkgId(),
-                        pkg.getPaths(), pkg.getErrorMessage());
-                }
-            }
-            return containsPkg;
-        }));
+        }
+        return pkg.isPresent();
     }
 
     /**
@@ -195,35 +290,119 @@ public class ReplicationClient extends CQClient {
      * @throws SmokeTestException if any error
      */
     public Agents getAgentQueueJson() throws SmokeTestException {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            SlingHttpResponse response = this.doGet(DIST_AGENTS_PATH + ".3.json", HttpUtils.getExpectedStatus(200));
-            return mapper.readValue(response.getContent(), Agents.class);
+        try (SlingHttpResponse response = this.doStreamGet(DIST_AGENTS_PATH + ".3.json", Collections.emptyList(),
+            Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            return JsonCodec.read(response.getEntity(), Agents.class);
         } catch (IOException | ClientException e) {
             throw new SmokeTestException(GENERIC, "Exception getting agent queues", e);
         }
     }
 
+    /**
+     * Retrieve the given agents from the author, streaming the response without building a json tree
+     *
+     * @param agentNames the agents to decode, all agents if none given
+     * @return Agents object
+     * @throws SmokeTestException if any error
+     */
+    public Agents getAgents(String... agentNames) throws SmokeTestException {
+        try (SlingHttpResponse response = this.doStreamGet(DIST_AGENTS_PATH + ".3.json", Collections.emptyList(),
+            Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            return AgentsStreamReader.readAgents(response.getEntity().getContent(), agentNames);
+        } catch (IOException | ClientException e) {
+            throw new SmokeTestException(GENERIC, "Exception getting agent queues", e);
+        }
+    }
+
+    /**
+     * Retrieve the queues of a single agent from the author. Only the agent queues resource is requested,
+     * the other agents are neither rendered nor transferred.
+     *
+     * @param agentName the agent
+     * @return Agent object holding the queues, the agent state is not populated
+     * @throws SmokeTestException if any error or the agent is missing
+     */
+    public Agent getAgent(String agentName) throws SmokeTestException {
+        return getAgent(agentName, null);
+    }
+
+    /**
+     * Retrieve the queues of a single agent from the author, reusing the unchanged queues of the previous snapshot.
+     * See {@link AgentsStreamReader#readQueues(java.io.InputStream, String, Agent)}.
+     *
+     * @param agentName the agent
+     * @param previous the previous snapshot of the agent, may be null
+     * @return Agent object holding the queues, the agent state is not populated
+     * @throws SmokeTestException if any error or the agent is missing
+     */
+    public Agent getAgent(String agentName, Agent previous) throws SmokeTestException {
+        try (SlingHttpResponse response = this.doStreamGet(getAgentQueuesPath(agentName), Collections.emptyList(),
+            Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            return AgentsStreamReader.readQueues(response.getEntity().getContent(), agentName, previous);
+        } catch (IOException | ClientException e) {
+            throw new SmokeTestException(GENERIC, "Exception getting queues of agent " + agentName, e);
+        }
+    }
+
+    /**
+     * Retrieve the queues of a single agent from the author up to the package with the given path and id.
+     * See {@link AgentsStreamReader#readQueuesUntil(java.io.InputStream, String, String, String)}.
+     *
+     * @param agentName the agent
+     * @param replicatedPath path to check
+     * @param id id to check
+     * @return Agent object holding the queues read, the agent state is not populated
+     * @throws SmokeTestException if any error or the agent is missing
+     */
+    public Agent getAgentUntilPackage(String agentName, String replicatedPath, String id) throws SmokeTestException {
+        try (SlingHttpResponse response = this.doStreamGet(getAgentQueuesPath(agentName), Collections.emptyList(),
+            Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            return AgentsStreamReader.readQueuesUntil(response.getEntity().getContent(), agentName, replicatedPath, id);
+        } catch (IOException | ClientException e) {
+            throw new SmokeTestException(GENERIC, "Exception getting queues of agent " + agentName, e);
+        }
+    }
+
+    /**
+     * Checks if the given package with paths and id still in queue of the agent.
+     * Only the agent queues are requested and the connection is released as soon as the package is found.
+     *
+     * @param agentName the agent
+     * @param replicatedPath path to check
+     * @param id id to check
+     * @return true if package still in queue
+     * @throws SmokeTestException if any error or the agent is missing
+     */
+    public boolean isPackageInQueue(String agentName, String replicatedPath, String id) throws SmokeTestException {
+        try (SlingHttpResponse response = this.doStreamGet(getAgentQueuesPath(agentName), Collections.emptyList(),
+            Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            Optional<Package> pkg = AgentsStreamReader.findPackageInQueues(response.getEntity().getContent(),
+                agentName, replicatedPath, id);
+            return pkg.isPresent();
+        } catch (IOException | ClientException e) {
+            throw new SmokeTestException(GENERIC, "Exception getting queues of agent " + agentName, e);
+        }
+    }
+
+    private static String getAgentQueuesPath(String agentName) {
+        return DIST_AGENTS_PATH + "/" + agentName + "/queues." + AGENT_QUEUES_DEPTH + ".json";
+    }
+
     public List<String> getBlockedQueueNames(Agent agent) throws SmokeTestException {
         List<String> blockedQueues = new ArrayList<>();
-        try {
-            SlingHttpResponse response = this.doGet(DIST_AGENTS_PATH + "/" + agent.getName() + "/queues.1.json", HttpUtils.getExpectedStatus(200));
-            JsonElement jsonElement = JsonParser.parseString(response.getContent().trim());
-            JsonObject result = jsonElement.getAsJsonObject();
-            JsonArray items = result.getAsJsonArray("items");
-            for (int i = 0; i < items.size(); i++) {
-                JsonElement item = items.get(i);
-                String queueName = item.getAsString();
-                JsonObject queue = result.getAsJsonObject(queueName);
-                if (queue.get("state").getAsString().equalsIgnoreCase(BLOCKED)) {
+        try (SlingHttpResponse response = this.doStreamGet(DIST_AGENTS_PATH + "/" + agent.getName() + "/queues.1.json",
+            Collections.emptyList(), Collections.emptyList(), HttpUtils.getExpectedStatus(200))) {
+            JsonNode result = JsonCodec.readTree(response.getEntity());
+            for (JsonNode item : result.path("items")) {
+                String queueName = item.asText();
+                if (result.path(queueName).path("state").asText().equalsIgnoreCase(BLOCKED)) {
                     blockedQueues.add(queueName);
                 }
             }
-        } catch(ClientException e) {
+        } catch(ClientException | IOException e) {
             throw new SmokeTestException(GENERIC, "Exception getting blocked queues names", e);
-        } finally {
-            return blockedQueues;
         }
+        return blockedQueues;
     }
 
     public void clearQueue(Agent agent) throws SmokeTestException {
@@ -231,14 +410,123 @@ public class ReplicationClient extends CQClient {
         for (String queueName: blockedQueues) {
             log.info("Clearing blocked queue {} for agent {}", queueName, agent.getName());
             try {
-                FormEntityBuilder formEntityBuilder = FormEntityBuilder.create().addParameter("operation", "delete").addParameter("limit", "-1");
-                this.doPost(DIST_AGENTS_PATH + "/" + agent.getName() + "/queues/" + queueName, formEntityBuilder.build(), Collections.emptyList());
+                deleteQueue(agent.getName(), queueName);
             } catch(ClientException e) {
                 throw new SmokeTestException(GENERIC, "Exception clearing the blocked queues", e);
             }
         }
     }
 
+    /**
+     * Clears the blocked queues of the given agents with up to {@link #DEFAULT_CLEAR_PARALLELISM} concurrent deletes
+     *
+     * @param agents the agents from a single agents snapshot, their blocked queues being cleared
+     * @return the number of items dropped per agent/queue
+     * @throws SmokeTestException if a queue could not be cleared or is still blocked
+     */
+    public Map<String, Integer> clearBlockedQueues(Collection<Agent> agents) throws SmokeTestException {
+        return clearBlockedQueues(agents, DEFAULT_CLEAR_PARALLELISM);
+    }
+
+    /**
+     * Clears the blocked queues of the given agents. The blocked queues are taken from the agents snapshot,
+     * deleted concurrently, then checked no longer blocked with a single request for all the agents.
+     *
+     * @param agents the agents from a single agents snapshot, their blocked queues being cleared
+     * @param parallelism the maximum number of concurrent deletes
+     * @return the number of items dropped per agent/queue
+     * @throws SmokeTestException if a queue could not be cleared or is still blocked
+     */
+    public Map<String, Integer> clearBlockedQueues(Collection<Agent> agents, int parallelism)
+        throws SmokeTestException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, was " + parallelism);
+        }
+        Map<String, Integer> dropped = new LinkedHashMap<>();
+        List<Callable<Void>> deletes = new ArrayList<>();
+        for (Agent agent : agents) {
+            agent.getQueues().forEach((queueName, queue) -> {
+                if (queue.isBlocked()) {
+                    dropped.put(agent.getName() + "/" + queueName, queue.getItemsCount());
+                    deletes.add(() -> {
+                        log.info("Clearing blocked queue {} for agent {}", queueName, agent.getName());
+                        deleteQueue(agent.getName(), queueName);
+                        return null;
+                    });
+                }
+            });
+        }
+        if (deletes.isEmpty()) {
+            return dropped;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, deletes.size()),
+            AsyncPolling.daemonThreadFactory("smoke-queue-clear-"));
+        try {
+            SmokeTestException failure = null;
+            for (Future<Void> delete : executor.invokeAll(deletes)) {
+                try {
+                    delete.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new SmokeTestException(GENERIC, "Exception clearing the blocked queues", e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                log.error(failure.getMessage(), failure);
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw getGenericException("Interrupted while clearing the blocked queues", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verifyUnblocked(dropped.keySet());
+        log.info("Items dropped from the blocked queues: {}", dropped);
+        return dropped;
+    }
+
+    /**
+     * Polls the agents until none of the given agent/queue is blocked
+     */
+    private void verifyUnblocked(Collection<String> agentQueues) throws SmokeTestException {
+        String[] agentNames = agentQueues.stream().map(key -> key.substring(0, key.indexOf('/'))).distinct()
+            .toArray(String[]::new);
+        List<String> stillBlocked = new ArrayList<>();
+        Polling polling = new Polling(() -> {
+            Agents agents = getAgents(agentNames);
+            stillBlocked.clear();
+            for (String agentQueue : agentQueues) {
+                int separator = agentQueue.indexOf('/');
+                Agent agent = agents.getAgent(agentQueue.substring(0, separator));
+                Queue queue = (agent != null) ? agent.getQueues().get(agentQueue.substring(separator + 1)) : null;
+                if (queue != null && queue.isBlocked()) {
+                    stillBlocked.add(agentQueue);
+                }
+            }
+            return stillBlocked.isEmpty();
+        });
+        try {
+            polling.poll(CLEAR_VERIFY_TIMEOUT, 500);
+        } catch (TimeoutException e) {
+            throw getReplicationException(QUEUE_BLOCKED, "Queues still blocked after clearing - " + stillBlocked,
+                polling.getLastException());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw getGenericException("Interrupted while checking the cleared queues", e);
+        }
+    }
+
+    private void deleteQueue(String agentName, String queueName) throws ClientException {
+        FormEntityBuilder formEntityBuilder = FormEntityBuilder.create().addParameter("operation", "delete").addParameter("limit", "-1");
+        this.doPost(DIST_AGENTS_PATH + "/" + agentName + "/queues/" + queueName, formEntityBuilder.build(), Collections.emptyList());
+    }
+
     public ReplicationException getReplicationException(String code, String message, Throwable t) {
         ReplicationException exception = new ReplicationException(code, message, t);
         log.error(exception.getMessage(), t);
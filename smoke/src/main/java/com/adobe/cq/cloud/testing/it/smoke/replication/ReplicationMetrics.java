@@ -0,0 +1,351 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
+import com.adobe.cq.cloud.testing.it.smoke.polling.LatencyHistogram;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JVM wide latency metrics of the replication phases, aggregated per agent and action.
+ * <p>
+ * The report is written when the JVM exits, as json and Prometheus text files to the directory set with
+ * -Dsmoke.metrics.dir, by default the failsafe reports directory.
+ */
+public final class ReplicationMetrics {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationMetrics.class);
+
+    private static final String REPORT_DIR = System.getProperty("smoke.metrics.dir", "target/failsafe-reports");
+    private static final String REPORT_NAME = "replication-metrics";
+    private static final String METRIC = "smoke_replication_phase_duration_ms";
+    private static final double[] QUANTILES = {50, 95, 99};
+
+    private static final ReplicationMetrics INSTANCE = new ReplicationMetrics();
+
+    /**
+     * Phases of a replication, each measured from the end of the previous one
+     */
+    public enum Phase {
+        /** From the replication request sent to the distribution package accepted */
+        REQUEST,
+        /** From the package accepted to the package left the agent queue */
+        QUEUE,
+        /** From the package left the queue to the page having the expected status on publish */
+        PAGE,
+        /** From the replication request sent to the end of the last phase */
+        TOTAL
+    }
+
+    // agent -> action -> phase -> histogram
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<Phase, LatencyHistogram>>> histograms =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    // page check mode -> requests, bytes saved
+    private final ConcurrentMap<String, AtomicLong[]> pageChecks = new ConcurrentHashMap<>();
+    private final AtomicLong newConnections = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    private ReplicationMetrics() {
+        // The metrics are JVM wide, so the report is written once when the test run ends
+        Runtime.getRuntime().addShutdownHook(new Thread(this::writeReport, "replication-metrics-report"));
+    }
+
+    public static ReplicationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing a replication, the request phase starts now
+     *
+     * @param agent the distribution agent
+     * @param action Activate or Deactivate
+     * @return the timer to mark the end of the phases
+     */
+    public Timer start(String agent, String action) {
+        return new Timer(agent, action);
+    }
+
+    /**
+     * Records the duration of a phase
+     *
+     * @param agent the distribution agent
+     * @param action Activate or Deactivate
+     * @param phase the phase
+     * @param millis duration in milliseconds
+     */
+    public void record(String agent, String action, Phase phase, long millis) {
+        histograms.computeIfAbsent(agent, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(action, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(phase, key -> new LatencyHistogram())
+            .record(millis);
+    }
+
+    /**
+     * Records a page check on publish and the response body bytes not transferred thanks to the check mode
+     *
+     * @param mode the page check mode
+     * @param bytesSaved body bytes not transferred
+     */
+    public void recordPageCheck(String mode, long bytesSaved) {
+        AtomicLong[] counters =
+            pageChecks.computeIfAbsent(mode, key -> new AtomicLong[] {new AtomicLong(), new AtomicLong()});
+        counters[0].incrementAndGet();
+        counters[1].addAndGet(Math.max(0, bytesSaved));
+    }
+
+    /**
+     * @return the body bytes not transferred by the page checks of all modes
+     */
+    public long getPageBytesSaved() {
+        return pageChecks.values().stream().mapToLong(counters -> counters[1].get()).sum();
+    }
+
+    /**
+     * Records a connection leased to check publish
+     *
+     * @param reused true if an open pooled connection was reused
+     * @param connectMillis duration of the connect and TLS handshake of a new connection
+     */
+    public void recordConnection(boolean reused, long connectMillis) {
+        if (reused) {
+            reusedConnections.incrementAndGet();
+        } else {
+            newConnections.incrementAndGet();
+            connectLatency.record(connectMillis);
+        }
+    }
+
+    /**
+     * @return the number of connections opened to check publish
+     */
+    public long getNewConnections() {
+        return newConnections.get();
+    }
+
+    /**
+     * @return the number of pooled connections reused to check publish
+     */
+    public long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    /**
+     * @param agent the distribution agent
+     * @param action Activate or Deactivate
+     * @param phase the phase
+     * @return the histogram of the phase, null if nothing recorded
+     */
+    public LatencyHistogram getHistogram(String agent, String action, Phase phase) {
+        Map<String, ConcurrentMap<Phase, LatencyHistogram>> actions = histograms.get(agent);
+        Map<Phase, LatencyHistogram> phases = (actions != null) ? actions.get(action) : null;
+        return (phases != null) ? phases.get(phase) : null;
+    }
+
+    /**
+     * Writes the report to the configured directory, failures are only logged
+     */
+    public void writeReport() {
+        if (isEmpty()) {
+            return;
+        }
+        try {
+            writeReport(new File(REPORT_DIR));
+        } catch (IOException e) {
+            log.warn("Could not write the replication metrics report to {}", REPORT_DIR, e);
+        }
+    }
+
+    /**
+     * @return true if nothing was recorded, neither replications nor page checks nor publish connections
+     */
+    private boolean isEmpty() {
+        return histograms.isEmpty() && failures.isEmpty() && pageChecks.isEmpty()
+            && newConnections.get() + reusedConnections.get() == 0;
+    }
+
+    /**
+     * Writes the json and Prometheus text reports to the given directory
+     *
+     * @param dir the report directory, created if missing
+     * @throws IOException if the reports cannot be written
+     */
+    public void writeReport(File dir) throws IOException {
+        Files.createDirectories(dir.toPath());
+
+        File json = new File(dir, REPORT_NAME + ".json");
+        JsonCodec.writePretty(json, toJson());
+
+        File prometheus = new File(dir, REPORT_NAME + ".prom");
+        try (Writer writer = Files.newBufferedWriter(prometheus.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(toPrometheus());
+        }
+        log.info("Replication metrics written to {} and {}", json, prometheus);
+    }
+
+    ObjectNode toJson() {
+        ObjectNode root = JsonCodec.createObjectNode();
+        forEach((agent, action, phase, histogram) -> {
+            ObjectNode node = root.with(agent).with(action).putObject(phase.name().toLowerCase(Locale.ROOT));
+            node.put("count", histogram.getCount());
+            node.put("mean", histogram.getMean());
+            for (double quantile : QUANTILES) {
+                node.put("p" + (int) quantile, histogram.getPercentile(quantile));
+            }
+            node.put("max", histogram.getMax());
+        });
+        failures.forEach((key, count) -> {
+            String[] agentAction = key.split("\\|", 2);
+            root.with(agentAction[0]).with(agentAction[1]).put("failures", count.get());
+        });
+        pageChecks.forEach((mode, counters) -> root.with("pageChecks").putObject(mode)
+            .put("requests", counters[0].get())
+            .put("bytesSaved", counters[1].get()));
+        if (newConnections.get() + reusedConnections.get() > 0) {
+            ObjectNode connections = root.putObject("publishConnections");
+            connections.put("new", newConnections.get());
+            connections.put("reused", reusedConnections.get());
+            connections.put("connectMeanMs", connectLatency.getMean());
+            connections.put("connectMaxMs", connectLatency.getMax());
+        }
+        return root;
+    }
+
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP ").append(METRIC).append(" Duration of the replication phases in milliseconds\n");
+        out.append("# TYPE ").append(METRIC).append(" summary\n");
+        StringBuilder max = new StringBuilder();
+        forEach((agent, action, phase, histogram) -> {
+            String labels = String.format("agent=\"%s\",action=\"%s\",phase=\"%s\"", agent, action,
+                phase.name().toLowerCase(Locale.ROOT));
+            for (double quantile : QUANTILES) {
+                out.append(METRIC).append('{').append(labels).append(",quantile=\"").append(quantile / 100)
+                    .append("\"} ").append(histogram.getPercentile(quantile)).append('\n');
+            }
+            out.append(METRIC).append("_sum{").append(labels).append("} ").append(histogram.getSum()).append('\n');
+            out.append(METRIC).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+            max.append(METRIC).append("_max{").append(labels).append("} ").append(histogram.getMax()).append('\n');
+        });
+        out.append("# TYPE ").append(METRIC).append("_max gauge\n").append(max);
+        out.append("# TYPE smoke_replication_failures_total counter\n");
+        new TreeMap<>(failures).forEach((key, count) -> {
+            String[] agentAction = key.split("\\|", 2);
+            out.append(String.format("smoke_replication_failures_total{agent=\"%s\",action=\"%s\"} %d\n",
+                agentAction[0], agentAction[1], count.get()));
+        });
+        out.append("# TYPE smoke_page_checks_total counter\n");
+        new TreeMap<>(pageChecks).forEach((mode, counters) -> out.append(
+            String.format("smoke_page_checks_total{mode=\"%s\"} %d\n", mode, counters[0].get())));
+        out.append("# TYPE smoke_page_check_bytes_saved_total counter\n");
+        new TreeMap<>(pageChecks).forEach((mode, counters) -> out.append(
+            String.format("smoke_page_check_bytes_saved_total{mode=\"%s\"} %d\n", mode, counters[1].get())));
+        out.append("# TYPE smoke_publish_connections_total counter\n");
+        out.append("smoke_publish_connections_total{type=\"new\"} ").append(newConnections.get()).append('\n');
+        out.append("smoke_publish_connections_total{type=\"reused\"} ").append(reusedConnections.get()).append('\n');
+        out.append("# TYPE smoke_publish_connect_duration_ms summary\n");
+        for (double quantile : QUANTILES) {
+            out.append("smoke_publish_connect_duration_ms{quantile=\"").append(quantile / 100).append("\"} ")
+                .append(connectLatency.getPercentile(quantile)).append('\n');
+        }
+        out.append("smoke_publish_connect_duration_ms_sum ").append(connectLatency.getSum()).append('\n');
+        out.append("smoke_publish_connect_duration_ms_count ").append(connectLatency.getCount()).append('\n');
+        return out.toString();
+    }
+
+    private void forEach(HistogramConsumer consumer) {
+        new TreeMap<>(histograms).forEach((agent, actions) -> new TreeMap<>(actions).forEach((action, phases) ->
+            new TreeMap<>(phases).forEach((phase, histogram) -> consumer.accept(agent, action, phase, histogram))));
+    }
+
+    private interface HistogramConsumer {
+        void accept(String agent, String action, Phase phase, LatencyHistogram histogram);
+    }
+
+    /**
+     * Marks the end of the phases of a single replication. A timer closed before the last phase counts as a failure.
+     */
+    public final class Timer implements AutoCloseable {
+        private final String agent;
+        private final String action;
+        private final long requested = System.nanoTime();
+        private long last = requested;
+        private boolean completed;
+
+        private Timer(String agent, String action) {
+            this.agent = agent;
+            this.action = action;
+        }
+
+        /**
+         * The distribution package was accepted, the artifactId returned
+         */
+        public void accepted() {
+            mark(Phase.REQUEST);
+        }
+
+        /**
+         * The package left the agent queue
+         */
+        public void drained() {
+            mark(Phase.QUEUE);
+        }
+
+        /**
+         * The page has the expected status on publish
+         */
+        public void visible() {
+            mark(Phase.PAGE);
+        }
+
+        /**
+         * Records the total duration, to call once the last phase ended
+         */
+        public void complete() {
+            record(agent, action, Phase.TOTAL, TimeUnit.NANOSECONDS.toMillis(last - requested));
+            completed = true;
+        }
+
+        @Override
+        public void close() {
+            if (!completed) {
+                failures.computeIfAbsent(agent + "|" + action, key -> new AtomicLong()).incrementAndGet();
+            }
+        }
+
+        private void mark(Phase phase) {
+            long now = System.nanoTime();
+            record(agent, action, phase, TimeUnit.NANOSECONDS.toMillis(now - last));
+            last = now;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Distribution agents discovered on an author: the publish and preview agent names and whether preview is available.
+ * <p>
+ * The topology is cached JVM wide per author url for -Dsmoke.topology.ttl milliseconds (default 5 minutes,
+ * 0 disables the cache). Concurrent lookups of the same author wait for a single discovery, which runs without
+ * holding a lock so that invalidating never blocks.
+ */
+public final class ReplicationTopology {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationTopology.class);
+
+    private static final long TTL = Long.getLong("smoke.topology.ttl", TimeUnit.MINUTES.toMillis(5));
+
+    private static final ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private final String publishAgent;
+    private final String previewAgent;
+    private final boolean previewAvailable;
+
+    public ReplicationTopology(String publishAgent, String previewAgent, boolean previewAvailable) {
+        this.publishAgent = publishAgent;
+        this.previewAgent = previewAgent;
+        this.previewAvailable = previewAvailable;
+    }
+
+    public String getPublishAgent() {
+        return publishAgent;
+    }
+
+    public String getPreviewAgent() {
+        return previewAgent;
+    }
+
+    public boolean isPreviewAvailable() {
+        return previewAvailable;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("publish agent %s, preview agent %s (%s)", publishAgent, previewAgent,
+            previewAvailable ? "available" : "unavailable");
+    }
+
+    /**
+     * Returns the cached topology of the author, discovering it if missing or expired.
+     * No lock is held during the discovery: it runs on the first caller thread, the concurrent callers wait for
+     * its result.
+     *
+     * @param authorUrl the author url
+     * @param discovery discovers the topology, run by a single caller at a time per author
+     * @return the topology
+     * @throws SmokeTestException if the discovery failed, nothing is cached then
+     */
+    public static ReplicationTopology get(String authorUrl, Discovery discovery) throws SmokeTestException {
+        while (true) {
+            Entry entry = CACHE.get(authorUrl);
+            if (entry != null && !entry.isExpired()) {
+                return entry.await();
+            }
+            Entry fresh = new Entry();
+            boolean owner = (entry == null)
+                ? CACHE.putIfAbsent(authorUrl, fresh) == null
+                : CACHE.replace(authorUrl, entry, fresh);
+            if (owner) {
+                return fresh.discover(authorUrl, discovery);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached topology of the author without waiting for a running discovery, the next lookup discovers
+     * it again
+     *
+     * @param authorUrl the author url
+     */
+    public static void invalidate(String authorUrl) {
+        Entry entry = CACHE.remove(authorUrl);
+        if (entry != null && entry.future.isDone()) {
+            log.info("Replication topology of {} invalidated", authorUrl);
+        }
+    }
+
+    /**
+     * Discovery of the topology on the author
+     */
+    @FunctionalInterface
+    public interface Discovery {
+        ReplicationTopology discover() throws SmokeTestException;
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<ReplicationTopology> future = new CompletableFuture<>();
+        private volatile long discovered;
+
+        private boolean isExpired() {
+            return future.isDone() && System.currentTimeMillis() - discovered >= TTL;
+        }
+
+        private ReplicationTopology discover(String authorUrl, Discovery discovery) throws SmokeTestException {
+            try {
+                ReplicationTopology topology = discovery.discover();
+                discovered = System.currentTimeMillis();
+                future.complete(topology);
+                log.info("Replication topology of {} discovered: {}", authorUrl, topology);
+                return topology;
+            } catch (Throwable t) {
+                // Fails the waiting lookups too, the next lookup discovers again
+                CACHE.remove(authorUrl, this);
+                future.completeExceptionally(t);
+                throw t;
+            }
+        }
+
+        private ReplicationTopology await() throws SmokeTestException {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SmokeTestException) {
+                    throw (SmokeTestException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
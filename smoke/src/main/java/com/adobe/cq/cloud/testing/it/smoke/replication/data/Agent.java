@@ -16,16 +16,19 @@
 
 package com.adobe.cq.cloud.testing.it.smoke.replication.data;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class Agent {
@@ -41,8 +44,44 @@ public class Agent {
     @JsonProperty("queues")
     private Map<String, Queue> queues = new HashMap<>();
 
-    private void addQueue(String id, Queue queue) {
+    @JsonIgnore
+    private final List<Queue> nonEmptyQueues = new ArrayList<>();
+
+    void addQueue(String id, Queue queue) {
         queues.put(id, queue);
+        if (!queue.isEmpty()) {
+            nonEmptyQueues.add(queue);
+        }
+    }
+
+    /**
+     * Looks up the package containing the given path in the non empty queues, see
+     * {@link Package#matches(String, String)}. Each queue lookup is a hash lookup on its path index.
+     *
+     * @param path path to check
+     * @param pkgId id to check
+     * @return the package if in queue
+     */
+    public Optional<Package> findPackage(String path, String pkgId) {
+        for (Queue queue : nonEmptyQueues) {
+            Optional<Package> pkg = queue.findPackage(path, pkgId);
+            if (pkg.isPresent()) {
+                return pkg;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the packages in error state of all the queues
+     */
+    @JsonIgnore
+    public List<Package> getBlockedPackages() {
+        List<Package> blocked = new ArrayList<>();
+        for (Queue queue : nonEmptyQueues) {
+            blocked.addAll(queue.getBlockedPackages());
+        }
+        return Collections.unmodifiableList(blocked);
     }
 
     public Map<String, Queue> getQueues() {
@@ -72,12 +111,7 @@ public class Agent {
 
     @Override 
     public String toString() {
-        ObjectMapper mapper = new ObjectMapper();
-
-        try {
-            return mapper.writeValueAsString(this);
-        } catch (JsonProcessingException ignored) {}
-        return "";
+        return JsonCodec.toJson(this);
     }
 
     public static Agent fromJson(JsonNode node) {
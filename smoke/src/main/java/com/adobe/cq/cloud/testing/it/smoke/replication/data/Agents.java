@@ -22,13 +22,12 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
 
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
@@ -40,7 +39,7 @@ public class Agents {
     @JsonProperty()
     private Map<String, Agent> agents = new HashMap<>();
 
-    private void addAgent(String id, Agent agent) {
+    void addAgent(String id, Agent agent) {
         agents.put(id, agent);
     }
 
@@ -59,12 +58,7 @@ public class Agents {
     
     @Override 
     public String toString() {
-        ObjectMapper mapper = new ObjectMapper();
-
-        try {
-            return mapper.writeValueAsString(agents);
-        } catch (JsonProcessingException ignored) {}
-        return "";
+        return JsonCodec.toJson(agents);
     }
 
     public static class AgentsDeserializer extends StdDeserializer<Agents> {
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token level reader for the distribution agents json.
+ * <p>
+ * Unlike {@link Agents.AgentsDeserializer} no json tree is built: only the requested agents are decoded,
+ * the package fields not used by the checks are skipped and {@link #findPackage} stops reading as soon as
+ * the package is found.
+ */
+public final class AgentsStreamReader {
+    private static final Logger log = LoggerFactory.getLogger(AgentsStreamReader.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String PACKAGE_PREFIX = "package";
+
+    private AgentsStreamReader() {
+    }
+
+    /**
+     * Reads the agents from the agents json
+     *
+     * @param in the agents json stream
+     * @param agentNames the agents to decode, all agents if none given
+     * @return Agents object
+     * @throws IOException if the stream cannot be read or parsed
+     */
+    public static Agents readAgents(InputStream in, String... agentNames) throws IOException {
+        Set<String> names = new HashSet<>(Arrays.asList(agentNames));
+        Agents agents = new Agents();
+
+        try (JsonParser jp = JSON_FACTORY.createParser(in)) {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                return agents;
+            }
+            int decoded = 0;
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                if (jp.nextToken() == JsonToken.START_OBJECT && (names.isEmpty() || names.contains(field))) {
+                    agents.addAgent(field, readAgent(jp, null));
+                    // Stop reading once all the requested agents are decoded
+                    if (++decoded == names.size()) {
+                        break;
+                    }
+                } else {
+                    jp.skipChildren();
+                }
+            }
+        }
+        return agents;
+    }
+
+    /**
+     * Searches the queues of the given agent for the package containing the path and id.
+     * Reading stops as soon as the package is found.
+     *
+     * @param in the agents json stream
+     * @param agentName the agent to search
+     * @param replicatedPath path to check
+     * @param id id to check
+     * @return the package if still in queue
+     * @throws IOException if the stream cannot be read or parsed or the agent is missing
+     */
+    public static Optional<Package> findPackage(InputStream in, String agentName, String replicatedPath, String id)
+        throws IOException {
+        PackageMatch match = new PackageMatch(replicatedPath, id);
+
+        try (JsonParser jp = JSON_FACTORY.createParser(in)) {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                if (jp.nextToken() == JsonToken.START_OBJECT && field.equals(agentName)) {
+                    readAgent(jp, match);
+                    return Optional.ofNullable(match.found);
+                }
+                jp.skipChildren();
+            }
+        }
+        throw new IOException(String.format("Distribution agent %s is missing from the distribution list", agentName));
+    }
+
+    /**
+     * Reads the agent queues from the json of a single agent queues resource.
+     * The agent state is not part of that resource and is left empty.
+     *
+     * @param in the agent queues json stream
+     * @param agentName the agent the queues belong to
+     * @return Agent object holding the queues
+     * @throws IOException if the stream cannot be read or parsed
+     */
+    public static Agent readQueues(InputStream in, String agentName) throws IOException {
+        return readQueues(in, agentName, null);
+    }
+
+    /**
+     * Reads the agent queues from the json of a single agent queues resource, reusing the queues of the previous
+     * snapshot whose {@link Queue#getFingerprint() fingerprint} did not change: their packages are skipped
+     * without being decoded and the previous {@link Queue} instance is returned along with its indexes.
+     * Blocked queues are always decoded.
+     *
+     * @param in the agent queues json stream
+     * @param agentName the agent the queues belong to
+     * @param previous the previous snapshot of the agent, may be null
+     * @return Agent object holding the queues
+     * @throws IOException if the stream cannot be read or parsed
+     */
+    public static Agent readQueues(InputStream in, String agentName, Agent previous) throws IOException {
+        Agent agent = new Agent();
+        agent.setName(agentName);
+        agent.setState("");
+
+        try (JsonParser jp = JSON_FACTORY.createParser(in)) {
+            if (jp.nextToken() == JsonToken.START_OBJECT) {
+                readQueues(jp, agent, null, previous);
+            }
+        }
+        return agent;
+    }
+
+    /**
+     * Searches the json of a single agent queues resource for the package containing the path and id.
+     * Reading stops as soon as the package is found.
+     *
+     * @param in the agent queues json stream
+     * @param agentName the agent the queues belong to
+     * @param replicatedPath path to check
+     * @param id id to check
+     * @return the package if still in queue
+     * @throws IOException if the stream cannot be read or parsed
+     */
+    public static Optional<Package> findPackageInQueues(InputStream in, String agentName, String replicatedPath,
+        String id) throws IOException {
+        PackageMatch match = new PackageMatch(replicatedPath, id);
+        readQueuesMatching(in, agentName, match);
+        return Optional.ofNullable(match.found);
+    }
+
+    /**
+     * Reads the json of a single agent queues resource up to the package containing the path and id.
+     * Reading stops as soon as the package is found: the queue holding it only has the packages ahead of it and
+     * the package itself, the queues after it are missing. All the queues are read if the package is not found.
+     *
+     * @param in the agent queues json stream
+     * @param agentName the agent the queues belong to
+     * @param replicatedPath path to check
+     * @param id id to check
+     * @return Agent object holding the queues read
+     * @throws IOException if the stream cannot be read or parsed
+     */
+    public static Agent readQueuesUntil(InputStream in, String agentName, String replicatedPath, String id)
+        throws IOException {
+        return readQueuesMatching(in, agentName, new PackageMatch(replicatedPath, id));
+    }
+
+    private static Agent readQueuesMatching(InputStream in, String agentName, PackageMatch match)
+        throws IOException {
+        Agent agent = new Agent();
+        agent.setName(agentName);
+        agent.setState("");
+
+        try (JsonParser jp = JSON_FACTORY.createParser(in)) {
+            if (jp.nextToken() == JsonToken.START_OBJECT) {
+                readQueues(jp, agent, match);
+            }
+        }
+        return agent;
+    }
+
+    private static Agent readAgent(JsonParser jp, PackageMatch match) throws IOException {
+        Agent agent = new Agent();
+        agent.setName("");
+        agent.setState("");
+
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if ("name".equals(field) && token.isScalarValue()) {
+                agent.setName(jp.getValueAsString(""));
+            } else if ("status".equals(field) && token == JsonToken.START_OBJECT) {
+                agent.setState(readState(jp));
+            } else if ("queues".equals(field) && token == JsonToken.START_OBJECT) {
+                readQueues(jp, agent, match);
+                if (match != null && match.found != null) {
+                    return agent;
+                }
+            } else {
+                jp.skipChildren();
+            }
+        }
+        return agent;
+    }
+
+    private static String readState(JsonParser jp) throws IOException {
+        String state = "";
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if ("state".equals(field) && token.isScalarValue()) {
+                state = jp.getValueAsString("");
+            } else {
+                jp.skipChildren();
+            }
+        }
+        return state;
+    }
+
+    private static void readQueues(JsonParser jp, Agent agent, PackageMatch match) throws IOException {
+        readQueues(jp, agent, match, null);
+    }
+
+    private static void readQueues(JsonParser jp, Agent agent, PackageMatch match, Agent previous)
+        throws IOException {
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            if (jp.nextToken() == JsonToken.START_OBJECT) {
+                Queue previousQueue = (previous != null) ? previous.getQueues().get(field) : null;
+                agent.addQueue(field, readQueue(jp, agent.getName(), match, previousQueue));
+                if (match != null && match.found != null) {
+                    return;
+                }
+            } else {
+                jp.skipChildren();
+            }
+        }
+    }
+
+    private static Queue readQueue(JsonParser jp, String agentName, PackageMatch match, Queue previous)
+        throws IOException {
+        Queue queue = new Queue();
+        queue.setState("");
+        queue.setItemsCount(0);
+        queue.setEmpty(true);
+        // Decided at the first package, the queue fields being rendered before the packages
+        Boolean unchanged = null;
+
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if ("state".equals(field) && token.isScalarValue()) {
+                queue.setState(jp.getValueAsString(""));
+            } else if ("itemsCount".equals(field) && token.isScalarValue()) {
+                queue.setItemsCount(jp.getValueAsInt());
+            } else if ("empty".equals(field) && token.isScalarValue()) {
+                queue.setEmpty(jp.getValueAsBoolean(true));
+            } else if ("items".equals(field) && token == JsonToken.START_ARRAY) {
+                JsonToken itemToken;
+                for (int i = 0; (itemToken = jp.nextToken()) != null && itemToken != JsonToken.END_ARRAY; i++) {
+                    if (i == 0) {
+                        queue.setHeadId(jp.getValueAsString(""));
+                    }
+                    jp.skipChildren();
+                }
+            } else if (field.startsWith(PACKAGE_PREFIX) && token == JsonToken.START_OBJECT) {
+                if (unchanged == null) {
+                    unchanged = isUnchanged(previous, queue);
+                }
+                if (unchanged) {
+                    jp.skipChildren();
+                    continue;
+                }
+                Package pkg = readPackage(jp);
+                queue.setPackage(field, pkg);
+                if (match != null && match.test(agentName, pkg)) {
+                    return queue;
+                }
+            } else {
+                jp.skipChildren();
+            }
+        }
+        if (unchanged == null) {
+            // Empty queue
+            unchanged = isUnchanged(previous, queue);
+        }
+        return unchanged ? previous : queue;
+    }
+
+    /**
+     * Blocked queues are always decoded, the attempts of the package in error not being part of the fingerprint
+     */
+    private static boolean isUnchanged(Queue previous, Queue queue) {
+        return previous != null && !queue.isBlocked() && previous.getFingerprint().equals(queue.getFingerprint());
+    }
+
+    /**
+     * Only decodes the package fields used by the queue checks, size, action, time and userid are skipped.
+     */
+    private static Package readPackage(JsonParser jp) throws IOException {
+        Package pkg = new Package();
+        pkg.setId("");
+        pkg.setPkgId("");
+        pkg.setState("");
+        pkg.setErrorMessage("");
+
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if (token == JsonToken.START_ARRAY && "paths".equals(field)) {
+                List<String> paths = new ArrayList<>();
+                JsonToken pathToken;
+                while ((pathToken = jp.nextToken()) != null && pathToken != JsonToken.END_ARRAY) {
+                    paths.add(jp.getValueAsString(""));
+                    jp.skipChildren();
+                }
+                pkg.setPaths(paths);
+            } else if (!token.isScalarValue()) {
+                jp.skipChildren();
+            } else if ("id".equals(field)) {
+                pkg.setId(jp.getValueAsString(""));
+            } else if ("pkgId".equals(field)) {
+                pkg.setPkgId(jp.getValueAsString(""));
+            } else if ("state".equals(field)) {
+                pkg.setState(jp.getValueAsString(""));
+            } else if ("attempts".equals(field)) {
+                pkg.setAttempts(jp.getValueAsInt());
+            } else if ("errorMessage".equals(field)) {
+                pkg.setErrorMessage(jp.getValueAsString(""));
+            }
+        }
+        return pkg;
+    }
+
+    /**
+     * Holds the package searched for and the package found if any
+     */
+    private static final class PackageMatch {
+        private final String replicatedPath;
+        private final String id;
+        private Package found;
+
+        private PackageMatch(String replicatedPath, String id) {
+            this.replicatedPath = replicatedPath;
+            this.id = id;
+        }
+
+        private boolean test(String agentName, Package pkg) {
+            if (pkg.matches(replicatedPath, id)) {
+                log.warn("The replication queue {} contains item [id: {}, pkgId: {}] with paths {}",
+                    agentName, pkg.getId(), pkg.getPkgId(), pkg.getPaths());
+                found = pkg;
+                return true;
+            }
+            if (pkg.isBlocked()) {
+                log.warn("The replication queue {} blocked with item [id: {}, pkgId: {}] having paths {} with error {}",
+                    agentName, pkg.getId(), pkg.getPkgId(), pkg.getPaths(), pkg.getErrorMessage());
+            }
+            return false;
+        }
+    }
+}
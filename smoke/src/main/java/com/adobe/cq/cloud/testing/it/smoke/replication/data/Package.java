@@ -17,16 +17,18 @@
 package com.adobe.cq.cloud.testing.it.smoke.replication.data;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.sling.api.SlingConstants;
 
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class Package {
 
@@ -67,6 +69,21 @@ public class Package {
         return state.equalsIgnoreCase(ERROR);
     }
 
+    /**
+     * Checks if the package contains the given path. The pkgId is only compared when known on both sides.
+     *
+     * @param replicatedPath path to check
+     * @param pkgId id to check
+     * @return true if the package is the one for the given path and id
+     */
+    public boolean matches(String replicatedPath, String pkgId) {
+        boolean isIdSame = true;
+        if (isNotEmpty(pkgId) && isNotEmpty(this.pkgId)) {
+            isIdSame = this.pkgId.equals(pkgId);
+        }
+        return isIdSame && paths.contains(replicatedPath);
+    }
+
     @SuppressWarnings("unused")
     public int getSize() {
         return size;
@@ -77,7 +94,7 @@ public class Package {
     }
     
     public List<String> getPaths() {
-        return new ArrayList<>(paths);
+        return Collections.unmodifiableList(paths);
     }
 
     public void setPaths(List<String> paths) {
@@ -155,12 +172,7 @@ public class Package {
 
     @Override
     public String toString() {
-        ObjectMapper mapper = new ObjectMapper();
-
-        try {
-            return mapper.writeValueAsString(this);
-        } catch (JsonProcessingException ignored) {}
-        return "";
+        return JsonCodec.toJson(this);
     }
     
     public static Package fromJson(JsonNode node) {
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication.data;
+
+/**
+ * Object to store the outcome of a completed replication: the request was accepted, the package left the agent
+ * queue and, if checked, the page returned the expected status on publish
+ */
+public class PublishResult {
+    // Status used when the page was not checked on publish
+    public static final int PAGE_NOT_CHECKED = -1;
+
+    private final String agent;
+    private final String path;
+    private final String action;
+    private final ReplicationResponse response;
+    private final int pageStatus;
+
+    public PublishResult(String agent, String path, String action, ReplicationResponse response, int pageStatus) {
+        this.agent = agent;
+        this.path = path;
+        this.action = action;
+        this.response = response;
+        this.pageStatus = pageStatus;
+    }
+
+    public String getAgent() {
+        return agent;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public ReplicationResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the status the page returned on publish, {@link #PAGE_NOT_CHECKED} if not checked
+     */
+    public int getPageStatus() {
+        return pageStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "PublishResult{agent=\"" + agent + "\", path=\"" + path + "\", action=\"" + action + "\", artifactId=\""
+            + response.getId() + "\", pageStatus=" + pageStatus + "}";
+    }
+}
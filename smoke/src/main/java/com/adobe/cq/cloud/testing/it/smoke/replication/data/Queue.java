@@ -17,18 +17,24 @@
 package com.adobe.cq.cloud.testing.it.smoke.replication.data;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class Queue {
+    private static final String BLOCKED = "BLOCKED";
+
     @JsonProperty
     private String name;
     
@@ -42,7 +48,21 @@ public class Queue {
     private boolean empty;
     
     @JsonProperty("packages")
-    private Map<String, Package> packageMap = new HashMap<>();
+    private Map<String, Package> packageMap = new LinkedHashMap<>();
+
+    // Indexes built when the packages are added, the packages must not be modified afterwards
+    @JsonIgnore
+    private final Map<String, List<Package>> pathIndex = new HashMap<>();
+
+    @JsonIgnore
+    private final Map<String, Package> pkgIdIndex = new HashMap<>();
+
+    @JsonIgnore
+    private final List<Package> blockedPackages = new ArrayList<>();
+
+    // Id of the first item of the queue, the one being processed
+    @JsonIgnore
+    private String headId = "";
 
     @SuppressWarnings("unused")
     public void setName(String name) {
@@ -54,8 +74,73 @@ public class Queue {
         return name;
     }
     
-    private void setPackage(String id, Package pkg) {
+    void setPackage(String id, Package pkg) {
         packageMap.put(id, pkg);
+        for (String path : pkg.getPaths()) {
+            pathIndex.computeIfAbsent(path, key -> new ArrayList<>(1)).add(pkg);
+        }
+        if (pkg.getPkgId() != null && !pkg.getPkgId().isEmpty()) {
+            pkgIdIndex.put(pkg.getPkgId(), pkg);
+        }
+        if (pkg.isBlocked()) {
+            blockedPackages.add(pkg);
+        }
+    }
+
+    /**
+     * Looks up the package containing the given path, see {@link Package#matches(String, String)}
+     *
+     * @param path path to check
+     * @param pkgId id to check
+     * @return the package if in queue
+     */
+    public Optional<Package> findPackage(String path, String pkgId) {
+        List<Package> packages = pathIndex.get(path);
+        if (packages == null) {
+            return Optional.empty();
+        }
+        return packages.stream().filter(pkg -> pkg.matches(path, pkgId)).findFirst();
+    }
+
+    /**
+     * @param pkg a package of the queue
+     * @return the number of packages ahead of the given one in the queue, -1 if not in queue
+     */
+    public int getPosition(Package pkg) {
+        int position = 0;
+        for (Package queued : packageMap.values()) {
+            if (queued == pkg) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * @param path the path
+     * @return the packages containing the path
+     */
+    @JsonIgnore
+    public List<Package> getPackagesByPath(String path) {
+        return Collections.unmodifiableList(pathIndex.getOrDefault(path, Collections.emptyList()));
+    }
+
+    /**
+     * @param pkgId the pkgId
+     * @return the package with the pkgId if in queue
+     */
+    @JsonIgnore
+    public Optional<Package> getPackageByPkgId(String pkgId) {
+        return Optional.ofNullable(pkgIdIndex.get(pkgId));
+    }
+
+    /**
+     * @return the packages in error state
+     */
+    @JsonIgnore
+    public List<Package> getBlockedPackages() {
+        return Collections.unmodifiableList(blockedPackages);
     }
 
     public Map<String, Package> getPackageMap() {
@@ -84,6 +169,35 @@ public class Queue {
         return empty;
     }
 
+    @JsonIgnore
+    public String getHeadId() {
+        return headId;
+    }
+
+    public void setHeadId(String headId) {
+        this.headId = (headId != null) ? headId : "";
+    }
+
+    /**
+     * Identifies the queue content without looking at the packages: the queue is processed from its head, so any
+     * package leaving, entering an empty queue or failing changes the state, the items count or the head id.
+     *
+     * @return the fingerprint of the queue
+     */
+    @JsonIgnore
+    public String getFingerprint() {
+        return fingerprint(state, itemsCount, headId);
+    }
+
+    static String fingerprint(String state, int itemsCount, String headId) {
+        return state + "|" + itemsCount + "|" + headId;
+    }
+
+    @JsonIgnore
+    public boolean isBlocked() {
+        return BLOCKED.equalsIgnoreCase(state);
+    }
+
     public void setEmpty(Boolean empty) {
         this.empty = empty;
     }
@@ -95,8 +209,7 @@ public class Queue {
             queue.setState(node.path("state").asText(""));
             queue.setItemsCount(node.path("itemsCount").asInt());
             queue.setEmpty(node.path("empty").asBoolean(true));
-
-            //Iterator<JsonNode> itemsIterator = node.path("items").elements();
+            queue.setHeadId(node.path("items").path(0).asText(""));
             
             Iterator<String> fieldNames = node.fieldNames();
             List<String> fieldList = new ArrayList<>();
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.replication.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Changes of an agent queue between two snapshots
+ */
+public final class QueueDelta {
+
+    private final String agent;
+    private final String queue;
+    private final String stateBefore;
+    private final String stateAfter;
+    private final List<Package> added;
+    private final List<Package> removed;
+    private final List<Package> changed;
+
+    private QueueDelta(String agent, String queue, String stateBefore, String stateAfter, List<Package> added,
+                       List<Package> removed, List<Package> changed) {
+        this.agent = agent;
+        this.queue = queue;
+        this.stateBefore = stateBefore;
+        this.stateAfter = stateAfter;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Compares two snapshots of the same queue, packages being matched by id
+     *
+     * @param agent the agent of the queue
+     * @param queue the queue name
+     * @param before the queue in the previous snapshot, null if the queue did not exist
+     * @param after the queue in the current snapshot, null if the queue is gone
+     * @return the delta, empty if the queues have the same packages in the same states
+     */
+    public static QueueDelta between(String agent, String queue, Queue before, Queue after) {
+        Map<String, Package> packagesBefore = (before != null) ? before.getPackageMap() : Collections.emptyMap();
+        Map<String, Package> packagesAfter = (after != null) ? after.getPackageMap() : Collections.emptyMap();
+        List<Package> added = new ArrayList<>();
+        List<Package> changed = new ArrayList<>();
+        List<Package> removed = new ArrayList<>();
+
+        packagesAfter.forEach((id, pkg) -> {
+            Package previous = packagesBefore.get(id);
+            if (previous == null) {
+                added.add(pkg);
+            } else if (!Objects.equals(previous.getState(), pkg.getState())) {
+                changed.add(pkg);
+            }
+        });
+        packagesBefore.forEach((id, pkg) -> {
+            if (!packagesAfter.containsKey(id)) {
+                removed.add(pkg);
+            }
+        });
+        return new QueueDelta(agent, queue, (before != null) ? before.getState() : null,
+            (after != null) ? after.getState() : null, added, removed, changed);
+    }
+
+    public String getAgent() {
+        return agent;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return the queue state in the previous snapshot, null if the queue did not exist
+     */
+    public String getStateBefore() {
+        return stateBefore;
+    }
+
+    /**
+     * @return the queue state in the current snapshot, null if the queue is gone
+     */
+    public String getStateAfter() {
+        return stateAfter;
+    }
+
+    /**
+     * @return the packages entering the queue
+     */
+    public List<Package> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the packages that left the queue
+     */
+    public List<Package> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the packages still in queue with a different state
+     */
+    public List<Package> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && Objects.equals(stateBefore, stateAfter);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s %s -> %s: %d added, %d removed, %d changed", agent, queue, stateBefore,
+            stateAfter, added.size(), removed.size(), changed.size());
+    }
+}
@@ -16,13 +16,19 @@
 
 package com.adobe.cq.cloud.testing.it.smoke.replication.data;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.adobe.cq.cloud.testing.it.smoke.json.JsonCodec;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.sling.testing.clients.ClientException;
 import org.apache.sling.testing.clients.SlingHttpResponse;
 
-import static org.apache.sling.testing.clients.util.JsonUtils.getJsonNodeFromString;
-
 /**
  * Object to parse and store the replication response
  */
@@ -30,15 +36,19 @@ public class ReplicationResponse {
     private int code;
     private String message;
     private String artifactId;
+    private List<String> artifactIds = new ArrayList<>();
+    private List<String> paths = new ArrayList<>();
 
     public static ReplicationResponse from(SlingHttpResponse response) {
         ReplicationResponse res = new ReplicationResponse();
         res.setCode(response.getStatusLine().getStatusCode());
         try {
-            JsonNode jsonNode = getJsonNodeFromString(response.getContent());
-            parseJson(res, jsonNode);
-            return res;
-        } catch (ClientException e) {
+            JsonNode jsonNode = JsonCodec.readTree(response.getContent());
+            if (jsonNode != null && jsonNode.isObject()) {
+                parseJson(res, jsonNode);
+                return res;
+            }
+        } catch (IOException e) {
             // Switch to throwing error once json is returned
         }
         // Is html
@@ -54,9 +64,45 @@ public class ReplicationResponse {
             if (!path.isMissingNode()) {
                 res.setId(path.asText());
             }
+            for (JsonNode id : artifactId) {
+                res.artifactIds.add(id.asText());
+            }
+        }
+        for (JsonNode path : jsonNode.path("path")) {
+            res.paths.add(path.asText());
         }
     }
 
+    /**
+     * Splits the response of a multi path request into one response per path.
+     * When the request was distributed as a single package, all paths share the same artifact id.
+     *
+     * @param requestedPaths the paths sent with the request
+     * @return the responses mapped by path, in request order
+     */
+    public Map<String, ReplicationResponse> perPath(Collection<String> requestedPaths) {
+        Map<String, ReplicationResponse> responses = new LinkedHashMap<>();
+        List<String> responsePaths = paths.isEmpty() ? new ArrayList<>(requestedPaths) : paths;
+        for (String path : requestedPaths) {
+            ReplicationResponse res = new ReplicationResponse();
+            res.setCode(code);
+            res.setMessage(message);
+            res.paths.add(path);
+
+            int index = responsePaths.indexOf(path);
+            if (artifactIds.size() == 1) {
+                res.setId(artifactIds.get(0));
+            } else if (index >= 0 && index < artifactIds.size() && artifactIds.size() == responsePaths.size()) {
+                res.setId(artifactIds.get(index));
+            }
+            if (res.artifactId != null) {
+                res.artifactIds.add(res.artifactId);
+            }
+            responses.put(path, res);
+        }
+        return responses;
+    }
+
     public String getMessage() {
         return message != null ? message : "";
     }
@@ -73,6 +119,14 @@ public class ReplicationResponse {
         this.artifactId = artifactId;
     }
 
+    public List<String> getIds() {
+        return Collections.unmodifiableList(artifactIds);
+    }
+
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
     public int getCode() {
         return code;
     }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.rules;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import org.junit.AssumptionViolatedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException.GENERIC;
+
+/**
+ * JVM wide circuit breaker of an instance, fed by the readiness and replication checks run before the tests.
+ * <p>
+ * A failed check opens the breaker: the tests of the instance then fail immediately with the original cause, or are
+ * skipped with -Dsmoke.breaker.skip=true, instead of running the same checks until their timeout. A failure recorded
+ * with {@link #recordSkip(Throwable)} only skips the tests.
+ * After -Dsmoke.breaker.cooldown milliseconds (default 5 minutes) the breaker is half-open: the next caller runs its
+ * check again, closing the breaker if it passes.
+ */
+public final class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final long COOLDOWN = Long.getLong("smoke.breaker.cooldown", TimeUnit.MINUTES.toMillis(5));
+    private static final boolean SKIP = Boolean.getBoolean("smoke.breaker.skip");
+
+    private static final ConcurrentMap<URI, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * States of the breaker
+     */
+    public enum State {
+        /** Checks run normally */
+        CLOSED,
+        /** Checks fail immediately with the cause */
+        OPEN,
+        /** A single check runs to decide whether to close the breaker */
+        HALF_OPEN
+    }
+
+    private final URI url;
+    private final long cooldown;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private Throwable cause;
+    private boolean skipOnly;
+    private long openedAt;
+    private long halfOpenedAt;
+
+    /**
+     * @param url the instance url
+     * @param cooldown milliseconds the breaker stays open before a check runs again
+     */
+    public CircuitBreaker(URI url, long cooldown) {
+        this.url = url;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * Returns the breaker of the instance
+     *
+     * @param url the instance url
+     * @return the JVM wide breaker
+     */
+    public static CircuitBreaker get(URI url) {
+        return BREAKERS.computeIfAbsent(url, key -> new CircuitBreaker(url, COOLDOWN));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Lets the caller run its check, unless the breaker is open. Once the cooldown elapsed, the caller is let through
+     * as the half-open check and must report its outcome.
+     *
+     * @throws SmokeTestException if the breaker is open, with the failure that opened it as cause
+     */
+    public synchronized void acquire() throws SmokeTestException {
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now - openedAt >= cooldown
+            || state == State.HALF_OPEN && now - halfOpenedAt >= cooldown) {
+            log.info("Circuit of {} half-open, checking it again", url);
+            state = State.HALF_OPEN;
+            halfOpenedAt = now;
+            return;
+        }
+        verify();
+    }
+
+    /**
+     * Checks the breaker is not open, without ever being let through as the half-open check
+     *
+     * @throws SmokeTestException if the breaker is open or half-open, with the failure that opened it as cause
+     */
+    public synchronized void verify() throws SmokeTestException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        String message = String.format("%s unavailable since %d s, circuit %s - %s", url,
+            TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - openedAt), state, cause.getMessage());
+        if (SKIP || skipOnly) {
+            throw new AssumptionViolatedException(message, cause);
+        }
+        String errorCode = (cause instanceof SmokeTestException) ? ((SmokeTestException) cause).getErrorCode() : GENERIC;
+        throw new SmokeTestException(errorCode, message, cause);
+    }
+
+    /**
+     * Closes the breaker if it was opened by a failure of the given type. The check is inconclusive otherwise: the
+     * breaker stays open and the next caller runs the half-open check.
+     *
+     * @param failureType the failures the passed check covers
+     */
+    public synchronized void recordSuccess(Class<? extends Throwable> failureType) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (failureType.isInstance(cause)) {
+            log.info("Circuit of {} closed again", url);
+            state = State.CLOSED;
+            cause = null;
+            skipOnly = false;
+        } else if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Opens the breaker, or restarts the cooldown if already open
+     *
+     * @param failure the failure of the check
+     */
+    public synchronized void recordFailure(Throwable failure) {
+        if (state == State.CLOSED || skipOnly) {
+            log.warn("Circuit of {} open, tests fail immediately for {} ms", url, cooldown, failure);
+        }
+        state = State.OPEN;
+        cause = failure;
+        skipOnly = false;
+        openedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Opens the breaker for a failure that only skips the tests, or restarts the cooldown if already open.
+     * A breaker already open by a failure recorded with {@link #recordFailure(Throwable)} keeps failing the tests.
+     *
+     * @param failure the failure of the check
+     */
+    public synchronized void recordSkip(Throwable failure) {
+        if (state == State.CLOSED) {
+            log.warn("Circuit of {} open, tests skipped for {} ms", url, cooldown, failure);
+            cause = failure;
+            skipOnly = true;
+        } else if (skipOnly) {
+            cause = failure;
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Circuit of " + url + " " + state;
+    }
+}
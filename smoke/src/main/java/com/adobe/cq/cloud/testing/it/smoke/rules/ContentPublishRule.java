@@ -16,10 +16,22 @@
 
 package com.adobe.cq.cloud.testing.it.smoke.rules;
 
-import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -27,15 +39,28 @@ import java.util.concurrent.atomic.AtomicReference;
 import com.adobe.cq.cloud.testing.it.smoke.exception.PublishException;
 import com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException;
 import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import com.adobe.cq.cloud.testing.it.smoke.polling.AsyncPolling;
+import com.adobe.cq.cloud.testing.it.smoke.polling.BackoffPolling;
+import com.adobe.cq.cloud.testing.it.smoke.publish.PublishProbeClient;
+import com.adobe.cq.cloud.testing.it.smoke.replication.QueueStalledException;
+import com.adobe.cq.cloud.testing.it.smoke.replication.QueueWatcher;
 import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationMetrics;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationTopology;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.PublishResult;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Queue;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.ReplicationResponse;
 import com.adobe.cq.testing.client.CQClient;
 import com.adobe.cq.testing.junit.rules.Page;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.sling.testing.clients.ClientException;
@@ -51,11 +76,15 @@ import static com.adobe.cq.cloud.testing.it.smoke.exception.PublishException.get
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.ACTION_NOT_REPLICATED;
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.QUEUE_BLOCKED;
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException.REPLICATION_NOT_AVAILABLE;
-import static com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient.checkPackageInQueue;
+import static com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException.GENERIC;
+import static com.adobe.cq.cloud.testing.it.smoke.replication.data.PublishResult.PAGE_NOT_CHECKED;
 import static org.apache.http.HttpStatus.SC_FORBIDDEN;
+import static org.apache.http.HttpStatus.SC_METHOD_NOT_ALLOWED;
 import static org.apache.http.HttpStatus.SC_MOVED_PERMANENTLY;
 import static org.apache.http.HttpStatus.SC_MOVED_TEMPORARILY;
 import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_NOT_IMPLEMENTED;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.apache.http.HttpStatus.SC_UNAUTHORIZED;
 
@@ -77,6 +106,9 @@ public class ContentPublishRule extends ExternalResource {
     protected static final String INTERNAL_PUBLISH_DIST_AGENT = "publish-internal";
     private static final String INTERNAL_PREVIEW_DIST_AGENT = "preview-internal";
 
+    private static final String ACTIVATE = "Activate";
+    private static final String DEACTIVATE = "Deactivate";
+
     private final Page root;
 
     private final Instance authorRule;
@@ -92,6 +124,40 @@ public class ContentPublishRule extends ExternalResource {
     
     private boolean previewAvailable;
 
+    private ScheduledExecutorService executor = AsyncPolling.getDefaultScheduler();
+    private Executor ioExecutor = AsyncPolling.getDefaultIoExecutor();
+
+    private final ReplicationMetrics metrics = ReplicationMetrics.getInstance();
+
+    private volatile PageCheckMode pageCheckMode = PageCheckMode.fromProperty();
+    // Set once publish answered a HEAD with 405 or 501, the next HEAD checks are sent as GET
+    private volatile boolean headUnsupported;
+
+    private final Map<String, PageValidators> pageValidators = new ConcurrentHashMap<>();
+
+    /**
+     * How the page status is checked on publish, set with -Dsmoke.page.check. GET by default, HEAD falling back to
+     * GET when the publish tier does not support it.
+     */
+    public enum PageCheckMode {
+        /** GET aborted as soon as the status is received */
+        GET,
+        /** HEAD, no body is ever sent */
+        HEAD,
+        /** GET with If-None-Match and If-Modified-Since from the last full response of the page */
+        CONDITIONAL;
+
+        private static PageCheckMode fromProperty() {
+            String value = System.getProperty("smoke.page.check", GET.name());
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Invalid -Dsmoke.page.check=%s, expected one of %s",
+                    value, Arrays.toString(values())), e);
+            }
+        }
+    }
+
     public ContentPublishRule(Page root, Instance authorRule, Instance publishRule) {
         this.root = root;
         this.authorRule = authorRule;
@@ -102,13 +168,63 @@ public class ContentPublishRule extends ExternalResource {
      * Initialize the replication client
      * Assert publish agent is available
      * Assert publish agent queues not blocked
+     * The checks are skipped while the {@link ReplicationTopology} of the author is cached, and fail immediately
+     * while the {@link CircuitBreaker} of the author or publish is open.
      * 
      * @throws Exception if exception occurs
      */
     @Override
     protected void before() throws Exception {
         replicationClient = getAuthorClient().adaptTo(ReplicationClient.class);
-        doReplicationChecks();
+        CircuitBreaker.get(getPublishClient().getUrl()).verify();
+        CircuitBreaker breaker = CircuitBreaker.get(getAuthorClient().getUrl());
+        breaker.acquire();
+        ReplicationTopology topology;
+        try {
+            topology = ReplicationTopology.get(getTopologyKey(), () -> {
+                doReplicationChecks();
+                return new ReplicationTopology(this.publishDistAgent, this.previewDistAgent, this.previewAvailable);
+            });
+        } catch (SmokeTestException e) {
+            breaker.recordFailure(e);
+            throw e;
+        }
+        breaker.recordSuccess(SmokeTestException.class);
+        this.publishDistAgent = topology.getPublishAgent();
+        this.previewDistAgent = topology.getPreviewAgent();
+        this.previewAvailable = topology.isPreviewAvailable();
+    }
+
+    private String getTopologyKey() {
+        return replicationClient.getUrl().toString();
+    }
+
+    /**
+     * Drops the cached topology after a replication error, so that the next test checks the agents again
+     */
+    private void invalidateTopologyOn(Throwable t) {
+        if (t instanceof ReplicationException) {
+            ReplicationTopology.invalidate(getTopologyKey());
+        }
+    }
+
+    /**
+     * Logs the page body transfer saved so far, the metrics report being written when the JVM exits
+     */
+    @Override
+    protected void after() {
+        log.info("Page checks saved {} bytes of page body transfer", metrics.getPageBytesSaved());
+    }
+
+    /**
+     * Sets how the page status is checked on publish
+     *
+     * @param mode the page check mode
+     * @return this rule
+     */
+    public ContentPublishRule withPageCheckMode(PageCheckMode mode) {
+        this.pageCheckMode = mode;
+        return this;
     }
 
     /**
@@ -124,6 +240,17 @@ public class ContentPublishRule extends ExternalResource {
         return publishClient;
     }
 
+    /**
+     * The client checking the page on publish over pooled keep-alive connections, created from the configuration
+     * of the {@link #getPublishClient()} and shared JVM wide per publish url
+     *
+     * @return The client to use for page checks.
+     * @throws ClientException if the client cannot be created
+     */
+    protected PublishProbeClient getProbeClient() throws ClientException {
+        return PublishProbeClient.get(getPublishClient());
+    }
+
     /**
      * The author client to use for page operations. The default implementation creates a {@link CQClient}.
      * The default implementation also uses the default admin user.
@@ -148,53 +275,19 @@ public class ContentPublishRule extends ExternalResource {
      */
     private void checkPage(boolean skipDispatcherCache, final int expectedStatus) throws PublishException {
         final String path = root.getPath() + ".html";
-        log.info("Checking page {} returns status {}", getPublishClient().getUrl(path), expectedStatus);
-        String errorMessage = String.format("Failed to check the page %s via the AEM publish ingress (expected status %s). "
-            + "Please ensure that the CDN and Dispatcher configurations allow fetching the page.", path, expectedStatus);
+        String errorMessage = getPageErrorMessage(path, expectedStatus);
 
         try {
-            SlingHttpResponse res;
-            final List<NameValuePair> queryParams = skipDispatcherCache
-                ? Collections.singletonList(
-                new BasicNameValuePair("timestamp", String.valueOf(System.currentTimeMillis())))
-                : Collections.emptyList();
-            
-            URI uri = getPublishClient().getUrl(path, queryParams);
-            URIBuilder builder = new URIBuilder(uri);
-            // Disable following redirects
-            builder.setParameter("http.protocol.handle-redirects", "false");
-            HttpUriRequest request = new HttpGet(builder.build());
-
-            res  = getPublishClient().doStreamRequest(request, null);
-            
-            // Special handling for 401,403, logging for 301,302
-            if (null != res && (res.getStatusLine().getStatusCode() == SC_UNAUTHORIZED
-                || res.getStatusLine().getStatusCode() == SC_FORBIDDEN)) {
-                log.warn("Got status {} while checking page, expected status {}", res.getStatusLine().getStatusCode(),
-                    expectedStatus);
-                throw new AssumptionViolatedException("Publish requires auth for (SAML?) or not authorized. Skipping...");
-            } else if (null != res && (res.getStatusLine().getStatusCode() == SC_MOVED_PERMANENTLY 
-                || res.getStatusLine().getStatusCode() == SC_MOVED_TEMPORARILY)) {
-                log.info("Redirect status {} detected for page {}", res.getStatusLine().getStatusCode(), path);
-            } else if (null != res && (res.getStatusLine().getStatusCode() == expectedStatus)) {
-                log.info("Page check completed with status {}", res.getStatusLine().getStatusCode());
+            if (probePage(path, skipDispatcherCache, expectedStatus)) {
                 return;
             }
             
             // Continue with a retry if any other status
             Polling polling = null;
             try {
-                polling = new Polling(() -> {
-                    final List<NameValuePair> newQueryParams = skipDispatcherCache
-                        ? Collections.singletonList(
-                        new BasicNameValuePair("timestamp", String.valueOf(System.currentTimeMillis())))
-                        : Collections.emptyList();
-                    SlingHttpResponse slingHttpResponse =
-                        getPublishClient().doGet(path, newQueryParams, Collections.emptyList(), expectedStatus);
-                    log.info("Page check completed with status {}", slingHttpResponse.getStatusLine().getStatusCode());
-                    return true;
-                });
-                // Changing the delay to be 10 seconds so that the check page runs every 10 seconds
+                polling = new BackoffPolling("publish-page-check",
+                    () -> retryPage(path, skipDispatcherCache, expectedStatus));
+                // Back off up to 10 seconds between page checks
                 polling.poll(TIMEOUT_PER_TRY, 10000);
             } catch (TimeoutException te) {
                 throw getPublishException(getPageErrorCode(expectedStatus), errorMessage, polling.getLastException());
@@ -206,6 +299,141 @@ public class ContentPublishRule extends ExternalResource {
         }
     }
 
+    /**
+     * Asynchronous version of {@link #checkPage(boolean, int)}, the retries are scheduled on the executor and the
+     * requests run on the I/O executor
+     */
+    private CompletableFuture<Integer> checkPageAsync(final String path, final int expectedStatus) {
+        String errorMessage = getPageErrorMessage(path, expectedStatus);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return probePage(path, true, expectedStatus);
+            } catch (ClientException | URISyntaxException e) {
+                throw new CompletionException(getPublishException(getPageErrorCode(expectedStatus), errorMessage, e));
+            }
+        }, ioExecutor).thenCompose(available -> {
+            if (available) {
+                return CompletableFuture.completedFuture(expectedStatus);
+            }
+            AsyncPolling polling = new AsyncPolling(() -> retryPage(path, true, expectedStatus), executor,
+                ioExecutor).withBackoff();
+            // Back off up to 10 seconds between page checks, as the synchronous check
+            return polling.poll(TIMEOUT_PER_TRY, 10000).handle((ignored, t) -> {
+                if (unwrap(t) instanceof TimeoutException) {
+                    throw new CompletionException(getPublishException(getPageErrorCode(expectedStatus), errorMessage,
+                        polling.getLastException()));
+                } else if (t != null) {
+                    throw new CompletionException(unwrap(t));
+                }
+                return expectedStatus;
+            });
+        });
+    }
+
+    /**
+     * Single request of the page on publish, without following redirects.
+     * Skips the test if publish requires authentication, logs redirects.
+     *
+     * @return true if the page has the expected status
+     */
+    private boolean probePage(String path, boolean skipDispatcherCache, int expectedStatus)
+        throws ClientException, URISyntaxException {
+        log.info("Checking page {} returns status {}", getPublishClient().getUrl(path), expectedStatus);
+
+        int status = requestPageStatus(path, skipDispatcherCache, false);
+
+        // Special handling for 401,403, logging for 301,302
+        if (status == SC_UNAUTHORIZED || status == SC_FORBIDDEN) {
+            log.warn("Got status {} while checking page, expected status {}", status, expectedStatus);
+            throw new AssumptionViolatedException("Publish requires auth for (SAML?) or not authorized. Skipping...");
+        } else if (status == SC_MOVED_PERMANENTLY || status == SC_MOVED_TEMPORARILY) {
+            log.info("Redirect status {} detected for page {}", status, path);
+        } else if (status == expectedStatus) {
+            log.info("Page check completed with status {}", status);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean retryPage(String path, boolean skipDispatcherCache, int expectedStatus)
+        throws ClientException, URISyntaxException {
+        int status = requestPageStatus(path, skipDispatcherCache, true);
+        if (status != expectedStatus) {
+            throw new ClientException(String.format("Expected status %s for page %s but got %s", expectedStatus,
+                path, status));
+        }
+        log.info("Page check completed with status {}", status);
+        return true;
+    }
+
+    /**
+     * Requests the page on publish according to the {@link PageCheckMode}, the body is never returned.
+     * With {@link PageCheckMode#CONDITIONAL} a 304 response stands for the status of the last full response.
+     *
+     * @return the status of the page
+     */
+    private int requestPageStatus(String path, boolean skipDispatcherCache, boolean followRedirects)
+        throws ClientException, URISyntaxException {
+        URIBuilder builder = new URIBuilder(getPublishClient().getUrl(path, getPageQueryParams(skipDispatcherCache)));
+        if (!followRedirects) {
+            // Disable following redirects
+            builder.setParameter("http.protocol.handle-redirects", "false");
+        }
+        PageCheckMode mode = pageCheckMode;
+        if (mode == PageCheckMode.HEAD && headUnsupported) {
+            mode = PageCheckMode.GET;
+        }
+        HttpRequestBase request = (mode == PageCheckMode.HEAD)
+            ? new HttpHead(builder.build()) : new HttpGet(builder.build());
+        PageValidators validators = (mode == PageCheckMode.CONDITIONAL) ? pageValidators.get(path) : null;
+        if (validators != null) {
+            validators.apply(request);
+        }
+
+        SlingHttpResponse res = getProbeClient().probe(request);
+        int status = res.getStatusLine().getStatusCode();
+        long length = (res.getEntity() != null) ? res.getEntity().getContentLength() : -1;
+        if (mode == PageCheckMode.HEAD && (status == SC_METHOD_NOT_ALLOWED || status == SC_NOT_IMPLEMENTED)) {
+            log.info("HEAD not supported for page {}, checking with GET", path);
+            headUnsupported = true;
+            return requestPageStatus(path, skipDispatcherCache, followRedirects);
+        }
+        if (mode == PageCheckMode.HEAD) {
+            length = getContentLength(res);
+            metrics.recordPageCheck(mode.name(), length);
+        } else if (status == SC_NOT_MODIFIED && validators != null) {
+            metrics.recordPageCheck(mode.name(), validators.contentLength);
+            status = validators.status;
+        } else {
+            if (mode == PageCheckMode.CONDITIONAL) {
+                pageValidators.put(path, new PageValidators(res, status, length));
+            }
+            metrics.recordPageCheck(mode.name(), 0);
+        }
+        return status;
+    }
+
+    private static long getContentLength(HttpResponse res) {
+        Header header = res.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return (header != null) ? Long.parseLong(header.getValue()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static List<NameValuePair> getPageQueryParams(boolean skipDispatcherCache) {
+        return skipDispatcherCache
+            ? Collections.singletonList(new BasicNameValuePair("timestamp", String.valueOf(System.currentTimeMillis())))
+            : Collections.emptyList();
+    }
+
+    private static String getPageErrorMessage(String path, int expectedStatus) {
+        return String.format("Failed to check the page %s via the AEM publish ingress (expected status %s). "
+            + "Please ensure that the CDN and Dispatcher configurations allow fetching the page.", path, expectedStatus);
+    }
+
     private PublishException getPublishException(String code, String message, Throwable t) {
         PublishException exception = new PublishException(code, message, t);
         log.error(exception.getMessage(), exception);
@@ -213,47 +441,255 @@ public class ContentPublishRule extends ExternalResource {
     }
     
     public void activateAssertPublish() throws SmokeTestException {
-        // Activate Page
-        ReplicationResponse replicationResponse = replicationClient.activate(this.publishDistAgent, root.getPath());
-
-        // Check activation successful
-        waitQueueEmptyOfPath(this.publishDistAgent, root.getPath(), replicationResponse.getId(), "Activate");
-
-        // Assert page added on publish
-        checkPage(SC_OK);
+        // Activate Page and assert page added on publish
+        replicateAndCheck(this.publishDistAgent, ACTIVATE, SC_OK);
     }
 
     public void activateAssertPreview() throws SmokeTestException {
         if (previewAvailable) {
             // Activate Page
-            ReplicationResponse replicationResponse = replicationClient.activate(this.previewDistAgent, root.getPath());
-
-            // Check activation successful
-            waitQueueEmptyOfPath(this.previewDistAgent, root.getPath(), replicationResponse.getId(), "Activate");
+            replicateAndCheck(this.previewDistAgent, ACTIVATE, PAGE_NOT_CHECKED);
         }
     }
 
     public void deactivateAssertPublish() throws SmokeTestException {
-        // Deactivate Page
-        ReplicationResponse replicationResponse = replicationClient.deactivate(this.publishDistAgent, root.getPath());
-
-        // Check deactivation successful
-        waitQueueEmptyOfPath(this.publishDistAgent, root.getPath(), replicationResponse.getId(), "Deactivate");
-
-        // Assert page deleted on publish
-        checkPage(SC_NOT_FOUND);
+        // Deactivate Page and assert page deleted on publish
+        replicateAndCheck(this.publishDistAgent, DEACTIVATE, SC_NOT_FOUND);
     }
 
     public void deactivateAssertPreview() throws SmokeTestException {
         if (previewAvailable) {
             // Deactivate Page
-            ReplicationResponse replicationResponse = replicationClient.deactivate(this.previewDistAgent, root.getPath());
+            replicateAndCheck(this.previewDistAgent, DEACTIVATE, PAGE_NOT_CHECKED);
+        }
+    }
+
+    /**
+     * Activates the page on the publish and preview agents concurrently, waiting on both queues in parallel.
+     * The page is asserted available on publish. Failures are reported per agent, when both agents fail the
+     * preview failure is added as suppressed to the publish one.
+     *
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public void activateAssertPublishAndPreview() throws SmokeTestException {
+        replicateConcurrently(ACTIVATE, SC_OK);
+    }
+
+    /**
+     * Deactivates the page on the publish and preview agents concurrently, waiting on both queues in parallel.
+     * The page is asserted gone from publish. Failures are reported per agent, when both agents fail the
+     * preview failure is added as suppressed to the publish one.
+     *
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public void deactivateAssertPublishAndPreview() throws SmokeTestException {
+        replicateConcurrently(DEACTIVATE, SC_NOT_FOUND);
+    }
+
+    private void replicateConcurrently(String action, int expectedStatus) throws SmokeTestException {
+        Map<String, CompletableFuture<PublishResult>> replications = new LinkedHashMap<>();
+        replications.put(this.publishDistAgent,
+            replicateAsync(this.publishDistAgent, root.getPath(), action, expectedStatus));
+        if (previewAvailable) {
+            replications.put(this.previewDistAgent,
+                replicateAsync(this.previewDistAgent, root.getPath(), action, PAGE_NOT_CHECKED));
+        }
+
+        // Wait for all the agents, so that each failure is reported
+        CompletableFuture.allOf(replications.values().toArray(new CompletableFuture[0]))
+            .handle((ignored, t) -> null).join();
+
+        SmokeTestException failure = null;
+        for (Map.Entry<String, CompletableFuture<PublishResult>> replication : replications.entrySet()) {
+            try {
+                log.info("{} completed on agent {} - {}", action, replication.getKey(), await(replication.getValue()));
+            } catch (SmokeTestException e) {
+                log.error("{} failed on agent {} - {}", action, replication.getKey(), e.getMessage());
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
-            // Check deactivation successful
-            waitQueueEmptyOfPath(this.previewDistAgent, root.getPath(), replicationResponse.getId(), "Deactivate");
+    /**
+     * Replicates the root page, waits for the package to leave the agent queue and checks the page status on
+     * publish, recording the duration of each phase in the {@link ReplicationMetrics}
+     */
+    private void replicateAndCheck(String agent, String action, int expectedStatus) throws SmokeTestException {
+        try (ReplicationMetrics.Timer timer = metrics.start(agent, action)) {
+            ReplicationResponse replicationResponse = ACTIVATE.equals(action)
+                ? replicationClient.activate(agent, root.getPath())
+                : replicationClient.deactivate(agent, root.getPath());
+            timer.accepted();
+
+            // Check replication successful
+            waitQueueEmptyOfPath(agent, root.getPath(), replicationResponse.getId(), action);
+            timer.drained();
+
+            if (expectedStatus != PAGE_NOT_CHECKED) {
+                checkPage(expectedStatus);
+                timer.visible();
+            }
+            timer.complete();
+        } catch (ReplicationException e) {
+            invalidateTopologyOn(e);
+            throw e;
         }
     }
     
+    /**
+     * Activates the path on the publish agent without blocking the caller.
+     * The returned future completes once the package left the agent queue and the page is available on publish.
+     *
+     * @param path the path to activate
+     * @return the future of the replication result
+     */
+    public CompletableFuture<PublishResult> activateAsync(String path) {
+        return replicateAsync(this.publishDistAgent, path, ACTIVATE, SC_OK);
+    }
+
+    /**
+     * Deactivates the path on the publish agent without blocking the caller.
+     * The returned future completes once the package left the agent queue and the page is gone from publish.
+     *
+     * @param path the path to deactivate
+     * @return the future of the replication result
+     */
+    public CompletableFuture<PublishResult> deactivateAsync(String path) {
+        return replicateAsync(this.publishDistAgent, path, DEACTIVATE, SC_NOT_FOUND);
+    }
+
+    /**
+     * Deactivates the paths on the publish agent in batches and waits until the agent queue is empty of them
+     *
+     * @param paths the paths to deactivate
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public void deactivateAll(Collection<String> paths) throws SmokeTestException {
+        try {
+            Map<String, ReplicationResponse> responses = replicationClient.deactivateAll(this.publishDistAgent, paths);
+            waitQueueEmptyOfPaths(this.publishDistAgent, responses, DEACTIVATE);
+        } catch (ReplicationException e) {
+            invalidateTopologyOn(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Number of items waiting in the queues of the publish agent
+     *
+     * @return the queue depth
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public int getPublishQueueDepth() throws SmokeTestException {
+        return replicationClient.getAgent(this.publishDistAgent).getQueues().values().stream()
+            .mapToInt(Queue::getItemsCount).sum();
+    }
+
+    /**
+     * @return the publish distribution agent used, publish-internal if available
+     */
+    public String getPublishDistAgent() {
+        return publishDistAgent;
+    }
+
+    /**
+     * Sets the scheduler of the retries of the asynchronous replications, by default the JVM wide
+     * {@link AsyncPolling#getDefaultScheduler()} is used. Only scheduling runs on it, see
+     * {@link #withIoExecutor(Executor)} for the blocking requests.
+     *
+     * @param executor the scheduler to use
+     * @return this rule
+     */
+    public ContentPublishRule withExecutor(ScheduledExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the executor running the blocking replication and page requests of the asynchronous replications,
+     * by default the JVM wide {@link AsyncPolling#getDefaultIoExecutor()} is used
+     *
+     * @param ioExecutor the executor to use, its size bounds the requests in flight
+     * @return this rule
+     */
+    public ContentPublishRule withIoExecutor(Executor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+        return this;
+    }
+
+    /**
+     * Waits for the result of an asynchronous replication, rethrowing the original failure
+     *
+     * @param future the future returned by an asynchronous replication
+     * @param <T> the result type
+     * @return the result
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SmokeTestException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof SmokeTestException) {
+                throw (SmokeTestException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SmokeTestException(GENERIC, "Asynchronous replication failed", cause);
+        }
+    }
+
+    private CompletableFuture<PublishResult> replicateAsync(String agent, String path, String action,
+        int expectedStatus) {
+        ReplicationMetrics.Timer timer = metrics.start(agent, action);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ReplicationResponse response = ACTIVATE.equals(action)
+                    ? replicationClient.activate(agent, path)
+                    : replicationClient.deactivate(agent, path);
+                timer.accepted();
+                return response;
+            } catch (SmokeTestException e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor).thenCompose(response -> waitQueueEmptyOfPathAsync(agent, path, response.getId(), action)
+            .thenCompose(ignored -> {
+                timer.drained();
+                return expectedStatus == PAGE_NOT_CHECKED
+                    ? CompletableFuture.completedFuture(PAGE_NOT_CHECKED)
+                    : checkPageAsync(path + ".html", expectedStatus).thenApply(pageStatus -> {
+                        timer.visible();
+                        return pageStatus;
+                    });
+            })
+            .thenApply(pageStatus -> {
+                timer.complete();
+                return new PublishResult(agent, path, action, response, pageStatus);
+            }))
+            .whenComplete((result, t) -> {
+                timer.close();
+                invalidateTopologyOn(unwrap(t));
+            });
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
     /**
      * Checks presence of publish distribution agent and waits until timeout if it's unavailable
      * Checks if the publish agent is not blocked
@@ -269,9 +705,9 @@ public class ContentPublishRule extends ExternalResource {
 
         // Check if the publish agent is present and retry till timeout
         try {
-            polling = new Polling(() -> {
+            polling = new BackoffPolling("replication-agents-check", () -> {
                 agentsRef.set(replicationClient.getAgentQueueJson());
-                log.info("Replication agents list: {}", agentsRef.get());
+                log.debug("Replication agents list: {}", agentsRef.get());
                 boolean internalPublishAgentExists = ReplicationClient.checkDistributionAgentExists(agentsRef.get(), INTERNAL_PUBLISH_DIST_AGENT);
                 if (!internalPublishAgentExists) {
                     log.info("Internal publish agent does not exist");
@@ -289,6 +725,7 @@ public class ContentPublishRule extends ExternalResource {
         }
 
         Agents agents = agentsRef.get();
+        List<Agent> blockedAgents = new ArrayList<>();
         
         boolean agentQueueBlocked = ReplicationClient.isAgentQueueBlocked(agents, this.publishDistAgent);
         if (agentQueueBlocked) {
@@ -297,16 +734,20 @@ public class ContentPublishRule extends ExternalResource {
                 throw replicationClient.getReplicationException(QUEUE_BLOCKED,
                         "Replication agent queue blocked - " + agents.getAgent(this.publishDistAgent), null);
             }
-            Agent publishAgent = agents.getAgent(this.publishDistAgent);
-            log.warn("Replication internal publish agent queue blocked - " + agents.getAgent(this.publishDistAgent));
-            replicationClient.clearQueue(publishAgent);
+            log.warn("Replication internal publish agent queue blocked - {}", agents.getAgent(this.publishDistAgent));
+            blockedAgents.add(agents.getAgent(this.publishDistAgent));
         }
         
         // Check if preview agent is available and not blocked
-        this.previewAvailable = doPreviewChecks(agents);
+        this.previewAvailable = doPreviewChecks(agents, blockedAgents);
+
+        // Clear the blocked internal queues of both agents at once
+        if (!blockedAgents.isEmpty()) {
+            replicationClient.clearBlockedQueues(blockedAgents);
+        }
     }
     
-    private boolean doPreviewChecks(Agents agents) throws SmokeTestException {
+    private boolean doPreviewChecks(Agents agents, List<Agent> blockedAgents) throws SmokeTestException {
         boolean internalPreviewAgentExists = ReplicationClient.checkDistributionAgentExists(agents, INTERNAL_PREVIEW_DIST_AGENT);
         boolean previewAgentExists = ReplicationClient.checkDistributionAgentExists(agents, PREVIEW_DIST_AGENT);
         if (!internalPreviewAgentExists) {
@@ -321,9 +762,8 @@ public class ContentPublishRule extends ExternalResource {
                     throw replicationClient.getReplicationException(QUEUE_BLOCKED,
                             "Replication agent queue blocked - " + agents.getAgent(this.previewDistAgent), null);
                 }
-                Agent previewAgent = agents.getAgent(this.previewDistAgent);
-                log.warn("Replication internal preview agent queue blocked - " + agents.getAgent(this.previewDistAgent));
-                replicationClient.clearQueue(previewAgent);
+                log.warn("Replication internal preview agent queue blocked - {}", agents.getAgent(this.previewDistAgent));
+                blockedAgents.add(agents.getAgent(this.previewDistAgent));
             }
         }
         return previewAgentExists;
@@ -331,6 +771,7 @@ public class ContentPublishRule extends ExternalResource {
     
     /**
      * Checks if the agent queue contains the given id and the path until timeout.
+     * The queue is watched by the JVM wide {@link QueueWatcher} of the agent, shared with any concurrent wait.
      *
      * @param agent   queue to check
      * @param path    path being replicated
@@ -340,27 +781,133 @@ public class ContentPublishRule extends ExternalResource {
      */
     public void waitQueueEmptyOfPath(final String agent, final String path, final String id, final String action)
         throws SmokeTestException {
-        Polling polling = null;
-        AtomicReference<Agents> agentsRef = new AtomicReference<>();
-        
+        QueueWatcher watcher = QueueWatcher.get(replicationClient, agent);
+
         log.info("Checking the replication queue [{}] for action [{}] contains item [pkgId: {}] with paths [{}]",
             agent, action, id, path);
-        
-        // Check if the agent has the package
+
+        CompletableFuture<Agent> drained = watcher.awaitDrained(path, id, TIMEOUT);
         try {
-            polling = new Polling(() -> {
-                agentsRef.set(replicationClient.getAgentQueueJson());
-                return !checkPackageInQueue(agentsRef.get().getAgent(agent), path, id);
-            });
-            polling.poll(TIMEOUT, 2000);
-        } catch (TimeoutException e) {
-            log.warn("Agent not empty of item {}", ((agentsRef.get() != null) ? agentsRef.get().getAgent(agent) : ""));
-            throw replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
-                String.format("Item not activated within %s ms", TIMEOUT),
-                polling.getLastException());
+            drained.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof QueueStalledException) {
+                throw replicationClient.getReplicationException(ACTION_NOT_REPLICATED, e.getCause().getMessage(),
+                    e.getCause());
+            } else if (e.getCause() instanceof TimeoutException) {
+                log.warn("Agent not empty of item {}", getLastSnapshot(watcher));
+                throw replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
+                    String.format("Item not activated within %s ms", TIMEOUT), watcher.getLastException());
+            }
+            throw replicationClient.getGenericException(String.format("Item not activated within %s ms", TIMEOUT),
+                e.getCause());
         } catch (InterruptedException | RuntimeException e) {
+            drained.cancel(false);
             throw replicationClient.getGenericException(String.format("Item not activated within %s ms", TIMEOUT), e);
         }
     }
-}
 
+    /**
+     * Asynchronous version of {@link #waitQueueEmptyOfPath}, no thread is held while waiting.
+     *
+     * @param agent   queue to check
+     * @param path    path being replicated
+     * @param id      identifier for the replication request
+     * @param action  the action initiated Activate or Deactivate
+     * @return the future completed once the agent queue is empty of the path
+     */
+    public CompletableFuture<Void> waitQueueEmptyOfPathAsync(final String agent, final String path, final String id,
+        final String action) {
+        QueueWatcher watcher = QueueWatcher.get(replicationClient, agent);
+
+        log.info("Checking the replication queue [{}] for action [{}] contains item [pkgId: {}] with paths [{}]",
+            agent, action, id, path);
+
+        return watcher.awaitDrained(path, id, TIMEOUT).handle((ignored, t) -> {
+            if (unwrap(t) instanceof QueueStalledException) {
+                throw new CompletionException(replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
+                    unwrap(t).getMessage(), unwrap(t)));
+            } else if (unwrap(t) instanceof TimeoutException) {
+                log.warn("Agent not empty of item {}", getLastSnapshot(watcher));
+                throw new CompletionException(replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
+                    String.format("Item not activated within %s ms", TIMEOUT), watcher.getLastException()));
+            } else if (t != null) {
+                throw new CompletionException(
+                    replicationClient.getGenericException(String.format("Item not activated within %s ms", TIMEOUT), unwrap(t)));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Checks until timeout if the agent queue still contains any of the given replicated paths.
+     * All the paths are registered on the {@link QueueWatcher} of the agent, so a single queue snapshot is taken
+     * per poll whatever the number of paths.
+     *
+     * @param agent      queue to check
+     * @param responses  replication responses per replicated path as returned by the batch replication
+     * @param action     the action initiated Activate or Deactivate
+     * @throws SmokeTestException exception containing error details if any
+     */
+    public void waitQueueEmptyOfPaths(final String agent, final Map<String, ReplicationResponse> responses,
+        final String action) throws SmokeTestException {
+        QueueWatcher watcher = QueueWatcher.get(replicationClient, agent);
+        Map<String, CompletableFuture<Agent>> pending = new LinkedHashMap<>();
+
+        log.info("Checking the replication queue [{}] for action [{}] contains any of {} items", agent, action,
+            responses.size());
+
+        responses.forEach((path, response) -> pending.put(path, watcher.awaitDrained(path, response.getId(), TIMEOUT)));
+        try {
+            CompletableFuture.allOf(pending.values().toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            pending.values().removeIf(drained -> !drained.isCompletedExceptionally());
+            if (e.getCause() instanceof QueueStalledException) {
+                throw replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
+                    String.format("%s of %s items not replicated - %s", pending.size(), responses.size(),
+                        e.getCause().getMessage()), e.getCause());
+            } else if (e.getCause() instanceof TimeoutException) {
+                log.warn("Agent not empty of items {} - {}", pending.keySet(), getLastSnapshot(watcher));
+                throw replicationClient.getReplicationException(ACTION_NOT_REPLICATED,
+                    String.format("%s of %s items not replicated within %s ms", pending.size(), responses.size(), TIMEOUT),
+                    watcher.getLastException());
+            }
+            throw replicationClient.getGenericException(String.format("Items not replicated within %s ms", TIMEOUT),
+                e.getCause());
+        } catch (InterruptedException | RuntimeException e) {
+            pending.values().forEach(drained -> drained.cancel(false));
+            throw replicationClient.getGenericException(String.format("Items not replicated within %s ms", TIMEOUT), e);
+        }
+    }
+
+    private static Object getLastSnapshot(QueueWatcher watcher) {
+        return (watcher.getLastSnapshot() != null) ? watcher.getLastSnapshot() : "";
+    }
+
+    /**
+     * Validators of the last full response of a page
+     */
+    private static final class PageValidators {
+        private final String etag;
+        private final String lastModified;
+        private final int status;
+        private final long contentLength;
+
+        private PageValidators(HttpResponse res, int status, long contentLength) {
+            Header etagHeader = res.getFirstHeader(HttpHeaders.ETAG);
+            Header lastModifiedHeader = res.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            this.etag = (etagHeader != null) ? etagHeader.getValue() : null;
+            this.lastModified = (lastModifiedHeader != null) ? lastModifiedHeader.getValue() : null;
+            this.status = status;
+            this.contentLength = Math.max(0, contentLength);
+        }
+
+        private void apply(HttpRequestBase request) {
+            if (etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+    }
+}
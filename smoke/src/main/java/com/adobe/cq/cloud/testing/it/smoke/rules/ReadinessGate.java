@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.cq.cloud.testing.it.smoke.rules;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.adobe.cq.cloud.testing.it.smoke.polling.AsyncPolling;
+import com.adobe.cq.cloud.testing.it.smoke.polling.BackoffPolling;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.SlingClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JVM wide readiness of an instance, probed on its {@value ServiceAccessibleRule#SYSTEM_READY} endpoint.
+ * <p>
+ * A single prober exists per instance url. A healthy result is kept for -Dsmoke.readiness.ttl milliseconds
+ * (default 5 minutes), during which {@link #check(long)} returns immediately. A probe in flight is shared by all
+ * the callers, a new probe only starts after a failure or once the healthy result expired.
+ * Probes run on their own threads, so that author and publish are probed concurrently.
+ */
+public final class ReadinessGate {
+    private static final Logger log = LoggerFactory.getLogger(ReadinessGate.class);
+
+    private static final long TTL = Long.getLong("smoke.readiness.ttl", TimeUnit.MINUTES.toMillis(5));
+
+    private static final ExecutorService PROBES =
+        Executors.newCachedThreadPool(AsyncPolling.daemonThreadFactory("smoke-readiness-"));
+
+    private static final ConcurrentMap<URI, ReadinessGate> GATES = new ConcurrentHashMap<>();
+
+    private final URI url;
+    private final String runmode;
+    private final SlingClient client;
+
+    // Guarded by this
+    private CompletableFuture<Void> probe;
+    private volatile long healthyAt;
+
+    private ReadinessGate(URI url, String runmode) throws ClientException {
+        this.url = url;
+        this.runmode = runmode;
+
+        // Alternatively, rely on setting -Dsling.client.connection.timeout.seconds=10 from the outside
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(10000)
+                .setSocketTimeout(10000)
+                .build();
+
+        // See https://github.com/apache/sling-org-apache-sling-testing-clients#how-can-i-customize-the-underlying-httpclient
+        SlingClient.Builder builder = SlingClient.Builder.create(url, null, null);
+        HttpClientBuilder httpBuilder = builder.httpClientBuilder();
+        httpBuilder.setDefaultRequestConfig(requestConfig);
+        this.client = builder.build();
+    }
+
+    /**
+     * Returns the gate of the instance
+     *
+     * @param url the instance url
+     * @param runmode the instance runmode
+     * @return the JVM wide gate
+     */
+    public static ReadinessGate get(URI url, String runmode) {
+        return GATES.computeIfAbsent(url, key -> {
+            try {
+                return new ReadinessGate(url, runmode);
+            } catch (ClientException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Checks the instance is ready, probing it unless recently seen healthy or already being probed.
+     * The returned future completes exceptionally with a {@link TimeoutException} if the instance did not get
+     * ready within the timeout.
+     *
+     * @param timeout max time in milliseconds to wait for the instance
+     * @return the future of the readiness
+     */
+    public synchronized CompletableFuture<Void> check(long timeout) {
+        if (probe != null && !probe.isDone()) {
+            return probe;
+        }
+        if (probe != null && !probe.isCompletedExceptionally()
+            && System.currentTimeMillis() - healthyAt < TTL) {
+            log.debug("{} seen healthy {} ms ago", runmode.toUpperCase(), System.currentTimeMillis() - healthyAt);
+            return probe;
+        }
+        probe = CompletableFuture.runAsync(() -> poll(timeout), PROBES);
+        return probe;
+    }
+
+    private void poll(long timeout) {
+        AtomicInteger counter = new AtomicInteger();
+        BackoffPolling polling = new BackoffPolling(ServiceAccessibleRule.SYSTEM_READY + "-" + runmode, () -> {
+            counter.incrementAndGet();
+            HttpResponse httpResponse = client.execute(new HttpGet(client.getUrl(ServiceAccessibleRule.SYSTEM_READY)));
+            int status = httpResponse.getStatusLine().getStatusCode();
+            String response = EntityUtils.toString(httpResponse.getEntity());
+            if (status != 200) {
+                String errMsg = String.format("Status Code - %s, response - %s", status, response);
+                if (counter.get() % 20 == 0) {
+                    log.warn(errMsg);
+                }
+                throw new IOException(errMsg);
+            }
+            log.info("Health check for {} passed - {}", runmode.toUpperCase(), response);
+            return true;
+        });
+        try {
+            polling.poll(timeout, 2000);
+            healthyAt = System.currentTimeMillis();
+        } catch (TimeoutException e) {
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return runmode.toUpperCase() + " readiness of " + url;
+    }
+}
@@ -16,22 +16,15 @@
 
 package com.adobe.cq.cloud.testing.it.smoke.rules;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import com.adobe.cq.cloud.testing.it.smoke.exception.ServiceException;
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
 import com.adobe.cq.testing.client.CQClient;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-import org.apache.sling.testing.clients.util.poller.Polling;
-import org.apache.sling.testing.clients.ClientException;
-import org.apache.sling.testing.clients.SlingClient;
 import org.apache.sling.testing.junit.rules.instance.Instance;
+import org.junit.AssumptionViolatedException;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
@@ -41,67 +34,64 @@ import org.slf4j.LoggerFactory;
 import static com.adobe.cq.cloud.testing.it.smoke.exception.ServiceException.SUFFIX;
 
 /**
- * Junit test rule to check service up
+ * Junit test rule to check service up.
+ * The instance readiness is checked through the JVM wide {@link ReadinessGate}, the probe starting as soon as the
+ * rule is created so that the instances of a rule chain are probed concurrently.
+ * A failed check is only logged while the health check URLs are not GA. With -Dsmoke.readiness.skip=true it also
+ * opens the {@link CircuitBreaker} of the instance, skipping the next tests until the instance is ready again.
  */
 public class ServiceAccessibleRule implements TestRule {
     private static final Logger log = LoggerFactory.getLogger(ServiceAccessibleRule.class);
 
     protected static final long TIMEOUT = TimeUnit.MINUTES.toMillis(5);
 
+    // Opt-in, the readiness is not a trusted signal yet
+    private static final boolean SKIP_ON_FAILURE = Boolean.getBoolean("smoke.readiness.skip");
+
     public static final String SYSTEM_READY = "systemready";
 
     @SuppressWarnings({"FieldCanBeLocal", "unused"})
     private final Instance instance;
     private final String runmode;
     private final CQClient adminClient;
+    private final CircuitBreaker breaker;
+    private CompletableFuture<Void> ready;
+    private Throwable rejection;
 
     public ServiceAccessibleRule(Instance instance) {
         this.instance = instance;
         this.runmode = instance.getConfiguration().getRunmode();
         this.adminClient = instance.getAdminClient(CQClient.class);
+        this.breaker = CircuitBreaker.get(adminClient.getUrl());
+        try {
+            breaker.acquire();
+            this.ready = ReadinessGate.get(adminClient.getUrl(), runmode).check(TIMEOUT);
+        } catch (SmokeTestException | AssumptionViolatedException e) {
+            this.rejection = e;
+        }
     }
 
     public Statement apply(Statement base, Description description) {
-        Polling polling;
-
-        try {
-            // Alternatively, rely on setting -Dsling.client.connection.timeout.seconds=10 from the outside
-            RequestConfig requestConfig = RequestConfig.custom()
-                    .setConnectTimeout(10000)
-                    .setSocketTimeout(10000)
-                    .build();
-
-            // See https://github.com/apache/sling-org-apache-sling-testing-clients#how-can-i-customize-the-underlying-httpclient
-            SlingClient.Builder builder = SlingClient.Builder.create(adminClient.getUrl(), null, null);
-            HttpClientBuilder httpBuilder = builder.httpClientBuilder();
-            httpBuilder.setDefaultRequestConfig(requestConfig);
-            SlingClient client = builder.build();
-
-            AtomicInteger counter = new AtomicInteger();
-            polling = new Polling(() -> {
-                counter.incrementAndGet();
-                HttpResponse httpResponse = client.execute(new HttpGet(adminClient.getUrl(SYSTEM_READY)));
-                int status = httpResponse.getStatusLine().getStatusCode();
-                String response = EntityUtils.toString(httpResponse.getEntity());
-                if (status != 200) {
-                    String errMsg = String.format("Status Code - %s, response - %s", status, response);
-                    if (counter.get() % 20 == 0) {
-                        log.warn(errMsg);
-                    }
-                    throw new IOException(errMsg);
+        if (rejection != null) {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    throw rejection;
                 }
-                log.info("Health check for {} passed - {}", runmode.toUpperCase(), response);
-                return true;
-            });
-            polling.poll(TIMEOUT, 2000);
-        } catch (TimeoutException | InterruptedException ce) {
-            ServiceException serviceException = new ServiceException(runmode.toUpperCase() + SUFFIX, ce.getMessage());
+            };
+        }
+        try {
+            ready.join();
+            breaker.recordSuccess(ServiceException.class);
+        } catch (CompletionException ce) {
+            ServiceException serviceException = new ServiceException(runmode.toUpperCase() + SUFFIX,
+                ce.getCause().getMessage());
             log.warn("Health check failure", serviceException);
-            // TODO throw exceptions once the instance health check URLs GA
+            // TODO throw exceptions and record the failure once the instance health check URLs GA
             //throw serviceException;
-
-        } catch (ClientException e) {
-            throw new RuntimeException(e);
+            if (SKIP_ON_FAILURE) {
+                breaker.recordSkip(serviceException);
+            }
         }
         return base;
     }
@@ -14,10 +14,20 @@
  * limitations under the License.
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
 
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.AgentsStreamReader;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Package;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Queue;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.QueueDelta;
 import com.adobe.cq.cloud.testing.it.smoke.replication.data.ReplicationResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -30,6 +40,8 @@ import static com.adobe.cq.cloud.testing.it.smoke.replication.data.ReplicationRe
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -348,4 +360,216 @@ public class AgentsTest {
         assertEquals("dstrpck-1645087114730-810bc013-2c41-447e-9714-f288b0e63080", res.getId());
         assertEquals("Replication started for /content/dam/test/atari65xe_desc.html", res.getMessage());
     }
+
+    @Test
+    public void batchResponseTest() throws IOException {
+        String json = "{\"path\":[\"/content/test/page-1\",\"/content/test/page-2\"],"
+            + "\"artifactId\":[\"dstrpck-1\",\"dstrpck-2\"],"
+            + "\"status.message\":\"Replication started for 2 paths\",\"status.code\":200}";
+        ReplicationResponse res = new ReplicationResponse();
+        parseJson(res, new ObjectMapper().readTree(json));
+        assertEquals(2, res.getIds().size());
+        assertEquals("dstrpck-1", res.getId());
+
+        Map<String, ReplicationResponse> perPath =
+            res.perPath(Arrays.asList("/content/test/page-1", "/content/test/page-2"));
+        assertEquals("dstrpck-1", perPath.get("/content/test/page-1").getId());
+        assertEquals("dstrpck-2", perPath.get("/content/test/page-2").getId());
+        assertEquals("Replication started for 2 paths", perPath.get("/content/test/page-2").getMessage());
+
+        // A single distribution package for all the paths
+        json = "{\"path\":[\"/content/test/page-1\",\"/content/test/page-2\"],\"artifactId\":[\"dstrpck-1\"]}";
+        res = new ReplicationResponse();
+        parseJson(res, new ObjectMapper().readTree(json));
+        perPath = res.perPath(Arrays.asList("/content/test/page-1", "/content/test/page-2"));
+        assertEquals("dstrpck-1", perPath.get("/content/test/page-2").getId());
+    }
+
+    @Test
+    public void streamingReaderMatchesTreeDeserializer() throws IOException {
+        String json = syntheticAgentsJson(50, "preview", "publish");
+
+        Agents tree = new ObjectMapper().readValue(json, Agents.class);
+        Agents streamed = AgentsStreamReader.readAgents(toStream(json));
+        for (String name : new String[] {"preview", "publish"}) {
+            Agent expected = tree.getAgent(name);
+            Agent actual = streamed.getAgent(name);
+            assertNotNull(actual);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getState(), actual.getState());
+            assertEquals(expected.getQueues().keySet(), actual.getQueues().keySet());
+            assertEquals(expected.getQueues().get(queueName(name)).getPackageMap().keySet(),
+                actual.getQueues().get(queueName(name)).getPackageMap().keySet());
+        }
+        assertTrue(checkPackageInQueue(streamed.getAgent("publish"), "/content/test/page-49", "dstrpck-49"));
+        assertFalse(checkPackageInQueue(streamed.getAgent("publish"), "/content/test/page-50", ""));
+    }
+
+    @Test
+    public void streamingReaderDecodesRequestedAgentsOnly() throws IOException {
+        Agents agents = AgentsStreamReader.readAgents(toStream(syntheticAgentsJson(5, "preview", "publish")), "publish");
+        assertTrue(checkDistributionAgentExists(agents, "publish"));
+        assertFalse(checkDistributionAgentExists(agents, "preview"));
+    }
+
+    @Test
+    public void streamingFindPackageStopsReadingOnMatch() throws IOException {
+        String json = syntheticAgentsJson(10, "publish");
+        // Truncate the payload right after the matching package, parsing further would fail
+        String truncated = json.substring(0, json.indexOf("\"package-0@3\"") - 1) + "{ broken";
+
+        Optional<Package> pkg = AgentsStreamReader.findPackage(toStream(truncated), "publish", "/content/test/page-2", "");
+        assertTrue(pkg.isPresent());
+        assertEquals("dstrpck-2", pkg.get().getPkgId());
+        assertFalse(AgentsStreamReader.findPackage(toStream(json), "publish", "/content/test/page-2", "dstrpck-3")
+            .isPresent());
+    }
+
+    @Test
+    public void streamingReaderReadsSingleAgentQueues() throws IOException {
+        String json = syntheticQueuesJson(20, "publish-internal");
+
+        Agent agent = AgentsStreamReader.readQueues(toStream(json), "publish-internal");
+        assertEquals("publish-internal", agent.getName());
+        assertFalse(agent.isBlocked());
+        assertEquals(20, agent.getQueues().get(queueName("publish-internal")).getPackageMap().size());
+        assertTrue(checkPackageInQueue(agent, "/content/test/page-7", "dstrpck-7"));
+
+        assertTrue(AgentsStreamReader.findPackageInQueues(toStream(json), "publish-internal", "/content/test/page-7", "")
+            .isPresent());
+        assertFalse(AgentsStreamReader.findPackageInQueues(toStream(json), "publish-internal", "/content/test/page-20", "")
+            .isPresent());
+    }
+
+    @Test
+    public void streamingReaderStopsAtTheAwaitedPackage() throws IOException {
+        String json = syntheticQueuesJson(20, "publish-internal");
+
+        Agent partial = AgentsStreamReader.readQueuesUntil(toStream(json), "publish-internal", "/content/test/page-7",
+            "dstrpck-7");
+        Queue queue = partial.getQueues().get(queueName("publish-internal"));
+        assertEquals(8, queue.getPackageMap().size());
+        assertEquals(7, queue.getPosition(queue.findPackage("/content/test/page-7", "dstrpck-7").get()));
+        assertTrue(checkPackageInQueue(partial, "/content/test/page-7", "dstrpck-7"));
+
+        Agent complete = AgentsStreamReader.readQueuesUntil(toStream(json), "publish-internal", "/content/test/page-20",
+            "");
+        assertEquals(20, complete.getQueues().get(queueName("publish-internal")).getPackageMap().size());
+        assertFalse(checkPackageInQueue(complete, "/content/test/page-20", ""));
+    }
+
+    @Test
+    public void largeQueueLookupUsesIndexes() throws IOException {
+        int packages = 20000;
+        String json = syntheticQueuesJson(packages, "publish");
+
+        Agent agent = AgentsStreamReader.readQueues(toStream(json), "publish");
+        Queue queue = agent.getQueues().get(queueName("publish"));
+        assertEquals(packages, queue.getPackageMap().size());
+        for (int i = 0; i < packages; i += 997) {
+            assertTrue(checkPackageInQueue(agent, "/content/test/page-" + i, "dstrpck-" + i));
+            assertTrue(checkPackageInQueue(agent, "/content/test/page-" + i, ""));
+            assertEquals("package-0@" + i, queue.getPackageByPkgId("dstrpck-" + i).get().getId());
+        }
+        assertTrue(checkPackageInQueue(agent, "/content/test/page-" + (packages - 1), "dstrpck-" + (packages - 1)));
+        assertFalse(checkPackageInQueue(agent, "/content/test/page-1", "dstrpck-2"));
+        assertFalse(checkPackageInQueue(agent, "/content/test/page-" + packages, ""));
+        assertEquals(1, queue.getPackagesByPath("/content/test/page-42").size());
+        assertTrue(queue.getBlockedPackages().isEmpty());
+    }
+
+    @Test
+    public void largeAgentsTreeBuildsIndexes() throws IOException {
+        int packages = 5000;
+        Agents agents = new ObjectMapper().readValue(syntheticAgentsJson(packages, "preview", "publish"), Agents.class);
+
+        Agent publish = agents.getAgent("publish");
+        assertTrue(publish.findPackage("/content/test/page-" + (packages - 1), "dstrpck-" + (packages - 1)).isPresent());
+        assertFalse(publish.findPackage("/content/test/page-" + packages, "").isPresent());
+        assertTrue(checkPackageInQueue(agents.getAgent("preview"), "/content/test/page-0", "dstrpck-0"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void packagePathsAreNotCopied() throws IOException {
+        Agent agent = AgentsStreamReader.readQueues(toStream(syntheticQueuesJson(1, "publish")), "publish");
+        Package pkg = agent.findPackage("/content/test/page-0", "").get();
+        pkg.getPaths().add("/content/test/other");
+    }
+
+    @Test
+    public void unchangedQueuesAreReusedBetweenSnapshots() throws IOException {
+        Agent first = AgentsStreamReader.readQueues(toStream(syntheticQueuesJson(0, 50, "publish")), "publish");
+        Queue queue = first.getQueues().get(queueName("publish"));
+        assertEquals("package-0@0", queue.getHeadId());
+
+        Agent same = AgentsStreamReader.readQueues(toStream(syntheticQueuesJson(0, 50, "publish")), "publish", first);
+        assertSame(queue, same.getQueues().get(queueName("publish")));
+        assertTrue(QueueDelta.between("publish", queueName("publish"), queue, queue).isEmpty());
+
+        // Head drained and new packages queued
+        Agent next = AgentsStreamReader.readQueues(toStream(syntheticQueuesJson(2, 55, "publish")), "publish", same);
+        Queue nextQueue = next.getQueues().get(queueName("publish"));
+        assertNotSame(queue, nextQueue);
+        assertEquals(53, nextQueue.getPackageMap().size());
+        assertFalse(checkPackageInQueue(next, "/content/test/page-1", "dstrpck-1"));
+        assertTrue(checkPackageInQueue(next, "/content/test/page-54", "dstrpck-54"));
+
+        QueueDelta delta = QueueDelta.between("publish", queueName("publish"), queue, nextQueue);
+        assertEquals(5, delta.getAdded().size());
+        assertEquals(2, delta.getRemoved().size());
+        assertEquals("package-0@0", delta.getRemoved().get(0).getId());
+        assertTrue(delta.getChanged().isEmpty());
+    }
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String queueName(String agent) {
+        return "queue-" + agent + "Subscriber";
+    }
+
+    /**
+     * Builds an agents json with one queue per agent holding the given number of packages
+     */
+    private static String syntheticAgentsJson(int packages, String... agents) {
+        StringBuilder json = new StringBuilder("{\"sling:resourceType\":\"sling/distribution/service/agent/list\",\"items\":[");
+        for (int i = 0; i < agents.length; i++) {
+            json.append(i > 0 ? "," : "").append('"').append(agents[i]).append('"');
+        }
+        json.append(']');
+        for (String agent : agents) {
+            json.append(",\"").append(agent).append("\":{\"name\":\"").append(agent)
+                .append("\",\"queues\":").append(syntheticQueuesJson(packages, agent))
+                .append(",\"log\":{},\"status\":{\"state\":\"RUNNING\"}}");
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Builds the queues json of an agent with one queue holding the given number of packages
+     */
+    private static String syntheticQueuesJson(int packages, String agent) {
+        return syntheticQueuesJson(0, packages, agent);
+    }
+
+    /**
+     * Builds the queues json of an agent with one queue holding the packages from the first index included
+     * to the last excluded
+     */
+    private static String syntheticQueuesJson(int from, int to, String agent) {
+        String queue = queueName(agent);
+        StringBuilder json = new StringBuilder("{\"sling:resourceType\":\"sling/distribution/service/agent/queue/list\",");
+        json.append("\"items\":[\"").append(queue).append("\"],\"").append(queue)
+            .append("\":{\"state\":\"RUNNING\",\"items\":[\"package-0@").append(from).append("\"],\"itemsCount\":")
+            .append(to - from).append(",\"empty\":").append(to == from);
+        for (int i = from; i < to; i++) {
+            json.append(",\"package-0@").append(i).append("\":{\"size\":6443,\"paths\":[\"/content/test/page-")
+                .append(i).append("\"],\"action\":\"ADD\",\"id\":\"package-0@").append(i)
+                .append("\",\"pkgId\":\"dstrpck-").append(i)
+                .append("\",\"time\":\"Fri Feb 25 16:18:11 UTC 2022\",\"state\":\"QUEUED\",")
+                .append("\"userid\":\"replication-service\",\"attempts\":0}");
+        }
+        return json.append("}}").toString();
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.net.URI;
+
+import com.adobe.cq.cloud.testing.it.smoke.exception.ReplicationException;
+import com.adobe.cq.cloud.testing.it.smoke.exception.ServiceException;
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import com.adobe.cq.cloud.testing.it.smoke.rules.CircuitBreaker;
+import org.junit.AssumptionViolatedException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link CircuitBreaker} transitions between closed, open and half-open
+ */
+public class CircuitBreakerTest {
+
+    private static final URI AUTHOR = URI.create("http://author-breaker");
+
+    @Test
+    public void openBreakerFailsWithTheOriginalCause() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 60000);
+        breaker.acquire();
+        ServiceException cause = new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503");
+        breaker.recordFailure(cause);
+
+        try {
+            breaker.acquire();
+            fail("Open breaker let the check through");
+        } catch (SmokeTestException e) {
+            assertSame(cause, e.getCause());
+            assertEquals("AUTHOR_NOT_AVAILABLE", e.getErrorCode());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenCheckClosesTheBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 0);
+        breaker.recordFailure(new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503"));
+
+        breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordSuccess(ServiceException.class);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.verify();
+    }
+
+    @Test
+    public void onlyOneHalfOpenCheckRunsAtOnce() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 200);
+        breaker.recordFailure(new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503"));
+        Thread.sleep(250);
+
+        breaker.acquire();
+        try {
+            breaker.acquire();
+            fail("Second check let through while half-open");
+        } catch (SmokeTestException e) {
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        }
+    }
+
+    @Test
+    public void unrelatedCheckLeavesTheBreakerOpen() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 0);
+        breaker.recordFailure(new ReplicationException("QUEUE_BLOCKED", "Replication agent queue blocked", null));
+
+        breaker.acquire();
+        breaker.recordSuccess(ServiceException.class);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.acquire();
+        breaker.recordSuccess(SmokeTestException.class);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedHalfOpenCheckReopensTheBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 0);
+        breaker.recordFailure(new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503"));
+
+        breaker.acquire();
+        ServiceException again = new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 502");
+        breaker.recordFailure(again);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void skipOnlyTripSkipsTheTests() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 60000);
+        ServiceException cause = new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503");
+        breaker.recordSkip(cause);
+
+        try {
+            breaker.acquire();
+            fail("Open breaker let the check through");
+        } catch (AssumptionViolatedException e) {
+            assertSame(cause, e.getCause());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void skipOnlyTripDoesNotDowngradeAFailure() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(AUTHOR, 60000);
+        ReplicationException failure =
+            new ReplicationException("QUEUE_BLOCKED", "Replication agent queue blocked", null);
+        breaker.recordFailure(failure);
+        breaker.recordSkip(new ServiceException("AUTHOR_NOT_AVAILABLE", "Status Code - 503"));
+
+        try {
+            breaker.verify();
+            fail("Open breaker let the check through");
+        } catch (SmokeTestException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+}
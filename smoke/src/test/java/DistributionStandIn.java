@@ -0,0 +1,430 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded stand-in for the author distribution endpoints and the publish page rendering.
+ * <p>
+ * Serves {@code /bin/replicate.json}, the agents list, the agent queues and the queue delete operation, and
+ * renders on publish the pages whose activation was processed. Each agent has a single queue processed in order,
+ * with a configurable processing latency and rate. Failing packages put the queue in error until it is cleared.
+ */
+public class DistributionStandIn implements AutoCloseable {
+
+    static final String AGENTS_PATH = "/libs/sling/distribution/services/agents";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long TICK_MILLIS = 5;
+
+    private final HttpServer server;
+    private final ScheduledExecutorService processor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "distribution-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, SimAgent> agents = new LinkedHashMap<>();
+    private final Set<String> published = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile long processingLatency;
+    private volatile double rate;
+    private volatile long responseLatency;
+    private volatile long retryInterval;
+
+    /**
+     * Starts the stand-in on a free local port
+     *
+     * @param agentNames the distribution agents to simulate
+     * @throws IOException if the server cannot be started
+     */
+    public DistributionStandIn(String... agentNames) throws IOException {
+        for (String name : agentNames) {
+            agents.put(name, new SimAgent(name));
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        processor.scheduleWithFixedDelay(this::process, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public URI getUrl() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * @param millis time a package stays queued before being processed
+     * @return this stand-in
+     */
+    public DistributionStandIn withProcessingLatency(long millis) {
+        this.processingLatency = millis;
+        return this;
+    }
+
+    /**
+     * @param packagesPerSecond max packages processed per second and agent, unlimited if 0
+     * @return this stand-in
+     */
+    public DistributionStandIn withRate(double packagesPerSecond) {
+        this.rate = packagesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param millis interval between two attempts of a package in error, never retried if 0
+     * @return this stand-in
+     */
+    public DistributionStandIn withRetryInterval(long millis) {
+        this.retryInterval = millis;
+        return this;
+    }
+
+    /**
+     * @param millis latency added to every response
+     * @return this stand-in
+     */
+    public DistributionStandIn withResponseLatency(long millis) {
+        this.responseLatency = millis;
+        return this;
+    }
+
+    /**
+     * The next packages processed by the agent fail, blocking its queue until cleared
+     *
+     * @param agent the agent
+     * @param count number of failing packages
+     * @return this stand-in
+     */
+    public DistributionStandIn failNext(String agent, int count) {
+        agents.get(agent).failNext.addAndGet(count);
+        return this;
+    }
+
+    /**
+     * Pauses or resumes the processing of the agent queue
+     *
+     * @param agent the agent
+     * @param paused true to pause
+     * @return this stand-in
+     */
+    public DistributionStandIn pause(String agent, boolean paused) {
+        agents.get(agent).paused = paused;
+        return this;
+    }
+
+    /**
+     * Adds packages to the agent queue without going through the replicate servlet
+     *
+     * @param agent the agent
+     * @param count number of packages, each with one path
+     * @return this stand-in
+     */
+    public DistributionStandIn enqueue(String agent, int count) {
+        SimAgent simAgent = agents.get(agent);
+        synchronized (simAgent) {
+            for (int i = 0; i < count; i++) {
+                long seq = sequence.incrementAndGet();
+                List<String> paths = new ArrayList<>();
+                paths.add("/content/stand-in/page-" + seq);
+                simAgent.queue.add(new SimPackage(seq, "ADD", paths));
+            }
+        }
+        return this;
+    }
+
+    public int getQueueSize(String agent) {
+        SimAgent simAgent = agents.get(agent);
+        synchronized (simAgent) {
+            return simAgent.queue.size();
+        }
+    }
+
+    public boolean isPublished(String path) {
+        return published.contains(path);
+    }
+
+    /**
+     * @return number of requests served
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        processor.shutdownNow();
+        server.stop(0);
+    }
+
+    private void process() {
+        long now = System.currentTimeMillis();
+        for (SimAgent agent : agents.values()) {
+            synchronized (agent) {
+                while (!agent.paused && !agent.queue.isEmpty()) {
+                    SimPackage head = agent.queue.peek();
+                    if (head.error && retryInterval > 0 && now >= head.lastAttempt + retryInterval) {
+                        // Retried but failing again
+                        head.attempts++;
+                        head.lastAttempt = now;
+                    }
+                    if (head.error || now < head.enqueued + processingLatency || now < agent.nextProcessing) {
+                        break;
+                    }
+                    head.attempts++;
+                    if (agent.failNext.get() > 0) {
+                        agent.failNext.decrementAndGet();
+                        head.error = true;
+                        head.lastAttempt = now;
+                        break;
+                    }
+                    agent.queue.poll();
+                    for (String path : head.paths) {
+                        if ("ADD".equals(head.action)) {
+                            published.add(path);
+                        } else {
+                            published.remove(path);
+                        }
+                    }
+                    if (rate > 0) {
+                        agent.nextProcessing = now + (long) (1000 / rate);
+                    }
+                }
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (responseLatency > 0) {
+                Thread.sleep(responseLatency);
+            }
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && "/bin/replicate.json".equals(path)) {
+                replicate(exchange);
+            } else if ("GET".equals(method) && path.matches(AGENTS_PATH + "(\\.\\d+)?\\.json")) {
+                ObjectNode json = MAPPER.createObjectNode();
+                json.put("sling:resourceType", "sling/distribution/service/agent/list");
+                ArrayNode items = json.putArray("items");
+                for (SimAgent agent : agents.values()) {
+                    items.add(agent.name);
+                    json.set(agent.name, agentJson(agent));
+                }
+                send(exchange, 200, json);
+            } else if ("GET".equals(method) && path.matches(AGENTS_PATH + "/[^/.]+/queues(\\.\\d+)?\\.json")) {
+                SimAgent agent = agents.get(path.substring(AGENTS_PATH.length() + 1, path.indexOf("/queues")));
+                if (agent == null) {
+                    send(exchange, 404, null);
+                } else {
+                    synchronized (agent) {
+                        send(exchange, 200, queuesJson(agent));
+                    }
+                }
+            } else if ("POST".equals(method) && path.startsWith(AGENTS_PATH + "/") && path.contains("/queues/")) {
+                clearQueue(exchange, path);
+            } else if (("GET".equals(method) || "HEAD".equals(method)) && path.endsWith(".html")) {
+                boolean available = published.contains(path.substring(0, path.length() - ".html".length()));
+                exchange.sendResponseHeaders(available ? 200 : 404, -1);
+            } else {
+                send(exchange, 404, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void replicate(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> params = readForm(exchange.getRequestBody());
+        String cmd = first(params, "cmd");
+        SimAgent agent = agents.get(first(params, "agentId"));
+        List<String> paths = params.getOrDefault("path", new ArrayList<>());
+
+        ObjectNode json = MAPPER.createObjectNode();
+        if (agent == null || paths.isEmpty()) {
+            json.put("status.message", "No agent or path to replicate");
+            json.put("status.code", 500);
+            send(exchange, 500, json);
+            return;
+        }
+        SimPackage pkg = new SimPackage(sequence.incrementAndGet(), "Deactivate".equals(cmd) ? "DELETE" : "ADD", paths);
+        synchronized (agent) {
+            agent.queue.add(pkg);
+        }
+        ArrayNode pathArray = json.putArray("path");
+        paths.forEach(pathArray::add);
+        json.putArray("artifactId").add(pkg.pkgId);
+        json.put("status.message", "Replication started for " + String.join(", ", paths));
+        json.put("status.code", 200);
+        send(exchange, 200, json);
+    }
+
+    private void clearQueue(HttpExchange exchange, String path) throws IOException {
+        Map<String, List<String>> params = readForm(exchange.getRequestBody());
+        SimAgent agent = agents.get(path.substring(AGENTS_PATH.length() + 1, path.indexOf("/queues/")));
+        if (agent == null || !"delete".equals(first(params, "operation"))) {
+            send(exchange, 404, null);
+            return;
+        }
+        synchronized (agent) {
+            agent.queue.clear();
+        }
+        send(exchange, 200, MAPPER.createObjectNode());
+    }
+
+    private ObjectNode agentJson(SimAgent agent) {
+        ObjectNode json = MAPPER.createObjectNode();
+        synchronized (agent) {
+            json.put("name", agent.name);
+            json.set("queues", queuesJson(agent));
+            json.putObject("log");
+            json.putObject("status").put("state", isBlocked(agent) ? "BLOCKED" : agent.queue.isEmpty() ? "IDLE" : "RUNNING");
+        }
+        return json;
+    }
+
+    private ObjectNode queuesJson(SimAgent agent) {
+        String queueName = "queue-" + agent.name + "Subscriber";
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put("sling:resourceType", "sling/distribution/service/agent/queue/list");
+        json.putArray("items").add(queueName);
+
+        ObjectNode queue = json.putObject(queueName);
+        queue.put("state", isBlocked(agent) ? "BLOCKED" : agent.queue.isEmpty() ? "IDLE" : "RUNNING");
+        ArrayNode items = queue.putArray("items");
+        queue.put("itemsCount", agent.queue.size());
+        queue.put("empty", agent.queue.isEmpty());
+        for (SimPackage pkg : agent.queue) {
+            items.add(pkg.id);
+            ObjectNode pkgJson = queue.putObject(pkg.id);
+            pkgJson.put("size", 6443);
+            ArrayNode paths = pkgJson.putArray("paths");
+            pkg.paths.forEach(paths::add);
+            pkgJson.put("action", pkg.action);
+            pkgJson.put("id", pkg.id);
+            pkgJson.put("pkgId", pkg.pkgId);
+            pkgJson.put("time", String.valueOf(pkg.enqueued));
+            pkgJson.put("state", pkg.error ? "ERROR" : "QUEUED");
+            pkgJson.put("userid", "replication-service");
+            pkgJson.put("attempts", pkg.attempts);
+            if (pkg.error) {
+                pkgJson.put("errorMessage", "Simulated failure of " + pkg.pkgId);
+            }
+        }
+        return json;
+    }
+
+    private static boolean isBlocked(SimAgent agent) {
+        return !agent.queue.isEmpty() && agent.queue.peek().error;
+    }
+
+    private static void send(HttpExchange exchange, int status, ObjectNode json) throws IOException {
+        byte[] body = (json != null) ? MAPPER.writeValueAsBytes(json) : new byte[0];
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> readForm(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        for (String pair : new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    private static String first(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+    private static final class SimAgent {
+        private final String name;
+        private final Deque<SimPackage> queue = new ArrayDeque<>();
+        private final AtomicInteger failNext = new AtomicInteger();
+        private volatile boolean paused;
+        private long nextProcessing;
+
+        private SimAgent(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class SimPackage {
+        private final String id;
+        private final String pkgId;
+        private final String action;
+        private final List<String> paths;
+        private final long enqueued = System.currentTimeMillis();
+        private int attempts;
+        private long lastAttempt;
+        private boolean error;
+
+        private SimPackage(long seq, String action, List<String> paths) {
+            this.id = "package-0@" + seq;
+            this.pkgId = "dstrpck-" + enqueued + "-" + seq;
+            this.action = action;
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.adobe.cq.cloud.testing.it.smoke.publish.PublishProbeClient;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationMetrics;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.sling.testing.clients.util.poller.Polling;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the publish probe client keeps its connections alive against the {@link DistributionStandIn}
+ */
+public class PublishProbeClientTest {
+
+    private static final String PUBLISH = "publish";
+    private static final String PAGE = "/content/test/page";
+
+    @Test
+    public void probesReusePooledConnection() throws Exception {
+        ReplicationMetrics metrics = ReplicationMetrics.getInstance();
+        try (DistributionStandIn standIn = new DistributionStandIn(PUBLISH);
+             PublishProbeClient probeClient = new PublishProbeClient(standIn.getUrl(), "admin", "admin")) {
+            ReplicationClient client = new ReplicationClient(standIn.getUrl(), "admin", "admin");
+            client.activate(PUBLISH, PAGE);
+            new Polling(() -> standIn.isPublished(PAGE)).poll(5000, 10);
+
+            long newBefore = metrics.getNewConnections();
+            long reusedBefore = metrics.getReusedConnections();
+            for (int i = 0; i < 10; i++) {
+                HttpGet get = new HttpGet(probeClient.getClient().getUrl(PAGE + ".html"));
+                assertEquals(200, probeClient.probe(get).getStatusLine().getStatusCode());
+                HttpHead head = new HttpHead(probeClient.getClient().getUrl("/content/test/missing.html"));
+                assertEquals(404, probeClient.probe(head).getStatusLine().getStatusCode());
+            }
+
+            // Every response released, a single connection serves all the sequential probes
+            assertEquals(1, metrics.getNewConnections() - newBefore);
+            assertTrue(metrics.getReusedConnections() - reusedBefore >= 19);
+        }
+    }
+}
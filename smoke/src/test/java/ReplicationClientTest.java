@@ -0,0 +1,201 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.adobe.cq.cloud.testing.it.smoke.replication.QueueStalledException;
+import com.adobe.cq.cloud.testing.it.smoke.replication.QueueWatcher;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agent;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.Agents;
+import com.adobe.cq.cloud.testing.it.smoke.replication.data.ReplicationResponse;
+import org.apache.sling.testing.clients.util.poller.Polling;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient.checkPackageInQueue;
+import static com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationClient.isAgentQueueBlocked;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Exercises the replication client against the {@link DistributionStandIn}
+ */
+public class ReplicationClientTest {
+
+    private static final String PUBLISH = "publish";
+    private static final String PREVIEW = "preview";
+    private static final String PAGE = "/content/test/page";
+
+    private DistributionStandIn standIn;
+    private ReplicationClient client;
+
+    @Before
+    public void before() throws Exception {
+        standIn = new DistributionStandIn(PUBLISH, PREVIEW);
+        client = new ReplicationClient(standIn.getUrl(), "admin", "admin");
+    }
+
+    @After
+    public void after() {
+        standIn.close();
+    }
+
+    @Test
+    public void activationLeavesQueueAndPublishesPage() throws Exception {
+        standIn.pause(PUBLISH, true);
+        ReplicationResponse response = client.activate(PUBLISH, PAGE);
+        assertEquals(200, response.getCode());
+        assertNotNull(response.getId());
+
+        assertTrue(client.isPackageInQueue(PUBLISH, PAGE, response.getId()));
+        assertTrue(checkPackageInQueue(client.getAgent(PUBLISH), PAGE, response.getId()));
+        assertFalse(client.isPackageInQueue(PREVIEW, PAGE, response.getId()));
+
+        standIn.pause(PUBLISH, false);
+        new Polling(() -> !client.isPackageInQueue(PUBLISH, PAGE, response.getId())).poll(5000, 10);
+        assertTrue(standIn.isPublished(PAGE));
+
+        ReplicationResponse deactivation = client.deactivate(PUBLISH, PAGE);
+        new Polling(() -> !client.isPackageInQueue(PUBLISH, PAGE, deactivation.getId())).poll(5000, 10);
+        assertFalse(standIn.isPublished(PAGE));
+    }
+
+    @Test
+    public void streamingAndTreeAgentsAgree() throws Exception {
+        standIn.pause(PUBLISH, true).enqueue(PUBLISH, 25);
+
+        Agents tree = client.getAgentQueueJson();
+        Agents streamed = client.getAgents(PUBLISH);
+        Agent treeAgent = tree.getAgent(PUBLISH);
+        Agent streamedAgent = streamed.getAgent(PUBLISH);
+        assertEquals(treeAgent.getState(), streamedAgent.getState());
+        assertEquals(treeAgent.getQueues().keySet(), streamedAgent.getQueues().keySet());
+        assertEquals(25, client.getAgent(PUBLISH).getQueues().values().iterator().next().getPackageMap().size());
+    }
+
+    @Test
+    public void batchActivationReturnsResponsePerPath() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            paths.add(PAGE + "-" + i);
+        }
+        Map<String, ReplicationResponse> responses = client.activateAll(PUBLISH, paths, 3);
+        assertEquals(paths, new ArrayList<>(responses.keySet()));
+
+        new Polling(() -> standIn.getQueueSize(PUBLISH) == 0).poll(5000, 10);
+        for (String path : paths) {
+            assertTrue(standIn.isPublished(path));
+            assertFalse(checkPackageInQueue(client.getAgent(PUBLISH), path, responses.get(path).getId()));
+        }
+    }
+
+    @Test
+    public void blockedQueueIsCleared() throws Exception {
+        standIn.failNext(PUBLISH, 1);
+        client.activate(PUBLISH, PAGE);
+        new Polling(() -> isAgentQueueBlocked(client.getAgentQueueJson(), PUBLISH)).poll(5000, 10);
+
+        Agent agent = client.getAgent(PUBLISH);
+        assertEquals(1, agent.getBlockedPackages().size());
+        assertEquals(1, client.getBlockedQueueNames(agent).size());
+
+        client.clearQueue(agent);
+        assertEquals(0, standIn.getQueueSize(PUBLISH));
+        assertFalse(isAgentQueueBlocked(client.getAgentQueueJson(), PUBLISH));
+    }
+
+    @Test
+    public void blockedQueuesOfAllAgentsAreClearedAtOnce() throws Exception {
+        standIn.failNext(PUBLISH, 1).failNext(PREVIEW, 1);
+        client.activateAll(PUBLISH, Arrays.asList(PAGE + "-0", PAGE + "-1", PAGE + "-2"), 1);
+        client.activate(PREVIEW, PAGE);
+        new Polling(() -> isAgentQueueBlocked(client.getAgentQueueJson(), PUBLISH)
+            && isAgentQueueBlocked(client.getAgentQueueJson(), PREVIEW)).poll(5000, 10);
+
+        Agents agents = client.getAgentQueueJson();
+        Map<String, Integer> dropped =
+            client.clearBlockedQueues(Arrays.asList(agents.getAgent(PUBLISH), agents.getAgent(PREVIEW)));
+        assertEquals(3, (int) dropped.get(PUBLISH + "/queue-" + PUBLISH + "Subscriber"));
+        assertEquals(1, (int) dropped.get(PREVIEW + "/queue-" + PREVIEW + "Subscriber"));
+        assertEquals(0, standIn.getQueueSize(PUBLISH));
+        assertEquals(0, standIn.getQueueSize(PREVIEW));
+        assertTrue(client.clearBlockedQueues(Arrays.asList(client.getAgent(PUBLISH))).isEmpty());
+    }
+
+    @Test
+    public void waitFailsFastOnPackageBlockedPastMaxAttempts() throws Exception {
+        standIn.withRetryInterval(100).failNext(PUBLISH, 1);
+        ReplicationResponse response = client.activate(PUBLISH, PAGE);
+        long start = System.currentTimeMillis();
+        try {
+            QueueWatcher.get(client, PUBLISH).awaitDrained(PAGE, response.getId(), 60000).get(30, TimeUnit.SECONDS);
+            fail("Stalled queue expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueueStalledException);
+            assertTrue(e.getCause().getMessage().contains(response.getId()));
+        }
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        client.clearQueue(client.getAgent(PUBLISH));
+    }
+
+    @Test
+    public void waitFailsFastOnPackageBehindBlockedPackage() throws Exception {
+        standIn.withRetryInterval(100).pause(PUBLISH, true).enqueue(PUBLISH, 3).failNext(PUBLISH, 1);
+        ReplicationResponse response = client.activate(PUBLISH, PAGE);
+        standIn.pause(PUBLISH, false);
+        try {
+            QueueWatcher.get(client, PUBLISH).awaitDrained(PAGE, response.getId(), 60000).get(30, TimeUnit.SECONDS);
+            fail("Stalled queue expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueueStalledException);
+            String message = e.getCause().getMessage();
+            assertTrue(message, message.contains(response.getId()));
+            assertTrue(message, message.contains("at position 3 in queue queue-" + PUBLISH + "Subscriber"));
+            assertTrue(message, message.contains("blocked by item"));
+        }
+        client.clearQueue(client.getAgent(PUBLISH));
+    }
+
+    @Test
+    public void queueWatcherSharesSnapshotsBetweenWaiters() throws Exception {
+        standIn.withProcessingLatency(200);
+        List<CompletableFuture<Agent>> waits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String path = PAGE + "-" + i;
+            ReplicationResponse response = client.activate(PUBLISH, path);
+            waits.add(QueueWatcher.get(client, PUBLISH).awaitDrained(path, response.getId(), 10000));
+        }
+        int requestsBefore = standIn.getRequests();
+        CompletableFuture.allOf(waits.toArray(new CompletableFuture[0])).get(15, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(standIn.isPublished(PAGE + "-" + i));
+        }
+        // A single poll loop whatever the number of waiters, far less than one request per waiter and poll
+        assertTrue(standIn.getRequests() - requestsBefore < 20);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.adobe.cq.cloud.testing.it.smoke.exception.SmokeTestException;
+import com.adobe.cq.cloud.testing.it.smoke.replication.ReplicationTopology;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JVM wide cache of the {@link ReplicationTopology}
+ */
+public class ReplicationTopologyTest {
+
+    @Test
+    public void concurrentLookupsDiscoverOnce() throws Exception {
+        String author = "http://author-concurrent";
+        AtomicInteger discoveries = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ReplicationTopology>> lookups = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                lookups.add(executor.submit(() -> ReplicationTopology.get(author, () -> {
+                    discoveries.incrementAndGet();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    return new ReplicationTopology("publish-internal", "preview-internal", true);
+                })));
+            }
+            ReplicationTopology first = lookups.get(0).get();
+            for (Future<ReplicationTopology> lookup : lookups) {
+                assertSame(first, lookup.get());
+            }
+            assertEquals(1, discoveries.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidatedTopologyIsDiscoveredAgain() throws Exception {
+        String author = "http://author-invalidated";
+        ReplicationTopology.get(author, () -> new ReplicationTopology("publish-internal", "preview-internal", true));
+        ReplicationTopology.invalidate(author);
+
+        ReplicationTopology topology =
+            ReplicationTopology.get(author, () -> new ReplicationTopology("publish", "preview", false));
+        assertEquals("publish", topology.getPublishAgent());
+        assertEquals("preview", topology.getPreviewAgent());
+    }
+
+    @Test
+    public void invalidateDoesNotWaitForTheDiscovery() throws Exception {
+        String author = "http://author-slow";
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ReplicationTopology> lookup = executor.submit(() -> ReplicationTopology.get(author, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return new ReplicationTopology("publish-internal", "preview-internal", true);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            ReplicationTopology.invalidate(author);
+            release.countDown();
+            assertEquals("publish-internal", lookup.get().getPublishAgent());
+            assertEquals("publish", ReplicationTopology.get(author,
+                () -> new ReplicationTopology("publish", "preview", false)).getPublishAgent());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedDiscoveryIsNotCached() throws Exception {
+        String author = "http://author-failed";
+        try {
+            ReplicationTopology.get(author, () -> {
+                throw new SmokeTestException(SmokeTestException.GENERIC, "Agents unavailable", null);
+            });
+            fail("Discovery failure expected");
+        } catch (SmokeTestException expected) {
+            // expected
+        }
+        assertEquals("publish", ReplicationTopology.get(author,
+            () -> new ReplicationTopology("publish", "preview", false)).getPublishAgent());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Adobe Systems Incorporated
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.cq.cloud.testing.it.xf.smoke;
+
+import com.adobe.cq.testing.client.ExperienceFragmentsClient.XF_TEMPLATE;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a test flow for every predefined XF template concurrently, with at most -Dxf.matrix.parallelism flows at once
+ * (default 4, 1 runs the templates one after the other). The failures of all the templates are reported together.
+ */
+final class TemplateMatrix {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateMatrix.class);
+
+    private static final int PARALLELISM = Math.max(1, Integer.getInteger("xf.matrix.parallelism", 4));
+
+    /**
+     * Flow of a test for one template
+     */
+    @FunctionalInterface
+    interface TemplateFlow {
+        void run(XF_TEMPLATE template) throws Exception;
+    }
+
+    private TemplateMatrix() {
+    }
+
+    /**
+     * @return the templates the flows run for, all the predefined ones
+     */
+    static List<XF_TEMPLATE> templates() {
+        List<XF_TEMPLATE> templates = new ArrayList<>();
+        for (XF_TEMPLATE template : XF_TEMPLATE.values()) {
+            if (template != XF_TEMPLATE.CUSTOM) {
+                templates.add(template);
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Suffix isolating the names of the content created by the flow of a template
+     * @param template the template
+     * @return the lower case template name
+     */
+    static String suffix(XF_TEMPLATE template) {
+        return template.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Runs the flow for all the templates and waits for all of them to complete
+     * @param name the name of the test, for the logs and the failure message
+     * @param flow the flow of a template
+     * @throws AssertionError listing the failed templates, their failures being suppressed exceptions
+     */
+    static void run(String name, TemplateFlow flow) {
+        List<XF_TEMPLATE> templates = templates();
+        LOGGER.info("{}: testing {} xf templates, {} at once", name, templates.size(), PARALLELISM);
+
+        Map<XF_TEMPLATE, Throwable> failures = new ConcurrentSkipListMap<>();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARALLELISM, templates.size()), r -> {
+            Thread thread = new Thread(r, "xf-matrix-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture.allOf(templates.stream()
+                .map(template -> CompletableFuture.runAsync(() -> {
+                    long start = System.currentTimeMillis();
+                    try {
+                        flow.run(template);
+                        LOGGER.info("{}: {} passed in {} ms", name, template, System.currentTimeMillis() - start);
+                    } catch (Throwable t) {
+                        LOGGER.warn("{}: {} failed in {} ms", name, template, System.currentTimeMillis() - start, t);
+                        failures.put(template, t);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder(String.format("%s failed for %d of %d xf templates",
+                name, failures.size(), templates.size()));
+            failures.forEach((template, failure) -> message.append(String.format("%n  %s: %s", template, failure)));
+            AssertionError error = new AssertionError(message.toString());
+            failures.values().forEach(error::addSuppressed);
+            throw error;
+        }
+    }
+}
@@ -45,7 +45,6 @@ import java.io.IOException;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import static org.awaitility.Awaitility.await;
 
@@ -99,12 +98,12 @@ public class XfSmokeIT {
     }
 
     @Test
-    public void testCreateExperienceFragment() throws ClientException, TimeoutException, InterruptedException {
+    public void testCreateExperienceFragment() {
         createExperienceFragments(CREATE_XF_PARENT_PATH);
     }
 
     @Test
-    public void testCreateXFInFolder() throws ClientException, TimeoutException, InterruptedException {
+    public void testCreateXFInFolder() throws ClientException {
         String folderLocation;
         try (SlingHttpResponse response = cqAuthorPublishClassRule.authorRule.getAdminClient()
                 .createFolder(CREATE_FOLDER, CREATE_FOLDER, CREATE_XF_PARENT_PATH)) {
@@ -116,21 +115,16 @@ public class XfSmokeIT {
         createExperienceFragments(folderLocation);
     }
 
-    private void createExperienceFragments(final String parentPath) throws ClientException, TimeoutException, InterruptedException {
+    private void createExperienceFragments(final String parentPath) {
 
         final ExperienceFragmentsClient xfClient = cqAuthorPublishClassRule.authorRule.getAdminClient(ExperienceFragmentsClient.class);
 
-        LOGGER.info("Testing {} xf templates", XF_TEMPLATE.values().length);
-        for (XF_TEMPLATE predefinedTemplate : XF_TEMPLATE.values()) {
-            LOGGER.info("Testing {}", predefinedTemplate);
-            if (predefinedTemplate == XF_TEMPLATE.CUSTOM)
-                continue;
-
+        TemplateMatrix.run("createExperienceFragments", predefinedTemplate -> {
             String xfPath;
             try (SlingHttpResponse response = xfClient
                     .experienceFragmentBuilder(CREATE_XF_TITLE, CREATE_VARIANT_TITLE, predefinedTemplate)
                     .withParentPath(parentPath)
-                    .withXFName(CREATE_XF_NAME)
+                    .withXFName(CREATE_XF_NAME + "-" + TemplateMatrix.suffix(predefinedTemplate))
                     .withVariantName(CREATE_VARIANT_NAME)
                     .withXFDescription(TEST_DESCRIPTION)
                     .create(HttpStatus.SC_CREATED)) {
@@ -155,19 +149,16 @@ public class XfSmokeIT {
             Assert.assertTrue("First variation is not marked as master", masterVariant.isMasterVariant());
             Assert.assertNotNull("Variant tags should not be null", masterVariant.getTags());
             Assert.assertEquals("Variant tags should contain at least one tag from the initial content", 1, masterVariant.getTags().size());
-        }
+        });
     }
 
     @Test
     public void deleteExperienceFragmentTest() throws ClientException {
         final ExperienceFragmentsClient client = cqAuthorPublishClassRule.authorRule.getAdminClient(ExperienceFragmentsClient.class);
-        for (XF_TEMPLATE predefinedTemplate : XF_TEMPLATE.values()) {
-            if (predefinedTemplate == XF_TEMPLATE.CUSTOM) {
-                continue;
-            }
-
+        TemplateMatrix.run("deleteExperienceFragmentTest", predefinedTemplate -> {
             String xfLocation;
-            try (SlingHttpResponse response = client.createExperienceFragment(DELETE_XF_TITLE, DELETE_VARIANT_TITLE, predefinedTemplate)) {
+            try (SlingHttpResponse response = client.createExperienceFragment(
+                    DELETE_XF_TITLE + "-" + TemplateMatrix.suffix(predefinedTemplate), DELETE_VARIANT_TITLE, predefinedTemplate)) {
                 xfLocation = response.getSlingParentLocation();
             } catch (IOException e) {
                 throw new TestingIOException("Exception while handling sling response (auto-closeable) of fragment creation", e);
@@ -183,7 +174,7 @@ public class XfSmokeIT {
                 client.deleteExperienceFragment(xfLocation, HttpStatus.SC_OK);
                 Assert.assertFalse("Experience Fragment should be deleted", client.exists(xfLocation));
             });
-        }
+        });
     }
 
     @Test
@@ -199,14 +190,11 @@ public class XfSmokeIT {
         }
         cleanupRule.addPath(xfPath);
 
-        for (XF_TEMPLATE template : XF_TEMPLATE.values()) {
-            if (template == XF_TEMPLATE.CUSTOM) {
-                continue;
-            }
-
+        TemplateMatrix.run("createXFVariantTest", template -> {
+            String variantName = VARCREA_VARIANT_NAME + "-" + TemplateMatrix.suffix(template);
             String variantPath;
             try (SlingHttpResponse response = adminXFClient.xfVariantBuilder(xfPath, template, VARCREA_VARIANT_TITLE)
-                    .withName(VARCREA_VARIANT_NAME)
+                    .withName(variantName)
                     .withDescription(TEST_DESCRIPTION)
                     .create()) {
                 variantPath = response.getSlingLocation();
@@ -225,7 +213,7 @@ public class XfSmokeIT {
                 Assert.assertEquals("Variant type", template.variantType(), variant.getVariantType());
 
                 Assert.assertEquals("Variant title", VARCREA_VARIANT_TITLE, variant.getTitle());
-                Assert.assertEquals("Variant name", VARCREA_VARIANT_NAME, variant.getName());
+                Assert.assertEquals("Variant name", variantName, variant.getName());
                 Assert.assertEquals("Variant description", TEST_DESCRIPTION, variant.getDescription());
                 Assert.assertEquals("Variant template", template, variant.getTemplateType());
                 Assert.assertNotNull("Variant tags should not be null", variant.getTags());
@@ -235,7 +223,7 @@ public class XfSmokeIT {
             adminXFClient.deletePage(new String[] {
                     variantPath
             }, true, false);
-        }
+        });
     }
 
     @Test
@@ -243,14 +231,10 @@ public class XfSmokeIT {
         final CQClient adminAuthor = cqAuthorPublishClassRule.authorRule.getAdminClient(CQClient.class);
         final ExperienceFragmentsClient authorXFClient = adminAuthor.adaptTo(ExperienceFragmentsClient.class);
 
-        for (XF_TEMPLATE template : XF_TEMPLATE.values()) {
-            if (template == XF_TEMPLATE.CUSTOM) {
-                continue;
-            }
-
+        TemplateMatrix.run("masterVariantDelete", template -> {
             String variantPath;
-            try (SlingHttpResponse response =
-                    authorXFClient.createExperienceFragment(VARDEL_XF_TITLE, VARDEL_MASTER_VARIANT_TITLE, template)) {
+            try (SlingHttpResponse response = authorXFClient.createExperienceFragment(
+                    VARDEL_XF_TITLE + "-" + TemplateMatrix.suffix(template), VARDEL_MASTER_VARIANT_TITLE, template)) {
                 variantPath = response.getSlingLocation();
             } catch (IOException e) {
                 throw new TestingIOException("Exception while handling sling response (auto-closeable) of fragment creation", e);
@@ -266,7 +250,7 @@ public class XfSmokeIT {
             await().untilAsserted(() -> {
                 Assert.assertTrue("Master variant should not be deleted", authorXFClient.exists(variantPath));
             });
-        }
+        });
     }
 
     @Test
@@ -282,12 +266,10 @@ public class XfSmokeIT {
         }
         cleanupRule.addPath(xfPath);
 
-        for (XF_TEMPLATE template : XF_TEMPLATE.values()) {
-            if (template == XF_TEMPLATE.CUSTOM)
-                continue;
-
+        TemplateMatrix.run("variantDelete", template -> {
             String variantPath;
-            try (SlingHttpResponse response = adminXFClient.createXfVariant(xfPath, template, VARDEL_VARIANT_TITLE)) {
+            try (SlingHttpResponse response = adminXFClient.createXfVariant(xfPath, template,
+                    VARDEL_VARIANT_TITLE + " " + TemplateMatrix.suffix(template))) {
                 variantPath = response.getSlingLocation();
             } catch (IOException e) {
                 throw new TestingIOException("Exception while handling sling response (auto-closeable) of variant creation", e);
@@ -301,6 +283,6 @@ public class XfSmokeIT {
             await().untilAsserted(() -> {
                 Assert.assertFalse("Variant should be deleted", adminXFClient.exists(variantPath));
             });
-        }
+        });
     }
 }
@@ -15,19 +15,11 @@
  */
 package com.adobe.cq.cloud.testing.it.xf.smoke.rules;
 
-import org.apache.sling.testing.clients.util.poller.Polling;
 import org.apache.sling.testing.junit.rules.instance.Instance;
 import org.junit.rules.ExternalResource;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeoutException;
-
 public class CleanupRule extends ExternalResource {
-    private static final ThreadLocal<List<String>> toDelete = ThreadLocal.withInitial(() -> new ArrayList<>(15));
-    private final Instance rule;
-    private final long timeout;
-    private final long delay;
+    private final CleanupEngine engine;
 
     /**
      * Cleanup all the added paths via #addPath() at the end of the test enclosed statement
@@ -36,9 +28,7 @@ public class CleanupRule extends ExternalResource {
      * @param delay delay in milliseconds in between retries to delete a path
      */
     public CleanupRule(Instance rule, long timeout, long delay) {
-        this.rule = rule;
-        this.timeout = timeout;
-        this.delay = delay;
+        this.engine = new CleanupEngine(rule, timeout, delay);
     }
 
     /**
@@ -46,18 +36,15 @@ public class CleanupRule extends ExternalResource {
      * @param path path to be deleted
      */
     public void addPath(String path) {
-        toDelete.get().add(path);
+        engine.register(path);
     }
 
     @Override
     protected void after() {
-        toDelete.get().forEach((path) -> {
-            try {
-                new Polling(() -> {
-                    rule.getAdminClient().deletePath(path);
-                    return rule.getAdminClient().exists(path);
-                }).poll(timeout, delay);
-            } catch (InterruptedException | TimeoutException | RuntimeException ignored) {}
-        });
+        try {
+            engine.clean();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }